@@ -115,6 +115,11 @@ public interface DocumentField
      */
     String HIDDEN = "hidden";
 
+    /**
+     * Flag set on entries of documents holding view rights of their own, which have to be checked on each hit.
+     */
+    String RESTRICTED = "restricted";
+
     /**
      * Document score.
      */
@@ -141,7 +146,7 @@ public interface DocumentField
     String MIME_TYPE = "mimetype";
 
     /**
-     * For storing the doc reference . Used by attachments.
+     * Reference of the page holding a document, attachment, object or property, used to group the hits by page.
      */
     String DOC_REFERENCE = "docref";
 
@@ -154,4 +159,10 @@ public interface DocumentField
      * For storing property name.
      */
     String PROPERTY_NAME = "propertyname";
+
+    /**
+     * Stored only copy of the value of a property, so that it can be fetched without knowing the property name. The
+     * properties indexed before it existed have no value until the index is rebuilt.
+     */
+    String PROPERTY_VALUE = "propertyvalue";
 }
@@ -73,6 +73,11 @@ public interface Search
      */
     String getStatusAsJson();
 
+    /**
+     * @return counters of the search response cache, by name: hits, misses, invalidations and size.
+     */
+    Map<String, Long> getCacheStatistics();
+
     /**
      * @return Object.
      */
@@ -19,6 +19,8 @@
  */
 package org.xwiki.platform.search;
 
+import java.util.Set;
+
 import org.xwiki.component.annotation.Role;
 
 /**
@@ -40,4 +42,34 @@ public interface SearchEngine
      * @return instance of Core Container.
      */
     Object getCoreContainer();
+
+    /**
+     * The names of the fields present in the index. The set is computed once per version of the index and shared,
+     * so it's cheap to call for every request.
+     * 
+     * @return the names of the indexed fields.
+     */
+    Set<String> getIndexFields();
+
+    /**
+     * @return the version of the index, which changes each time updates are committed, -1 if unknown.
+     */
+    long getIndexVersion();
+
+    /**
+     * Returns the search engine holding the index being rebuilt, creating it if needed. It is not searched until it is
+     * swapped with the live one.
+     * 
+     * @return instance of the search engine holding the index being rebuilt.
+     * @throws SearchException if it can't be created.
+     */
+    Object getRebuildSearchEngine() throws SearchException;
+
+    /**
+     * Swaps the index being rebuilt and the live index. The previous live index is kept as the rebuild one, so calling
+     * this method again rolls back.
+     * 
+     * @throws SearchException if the indexes can't be swapped.
+     */
+    void swapRebuildSearchEngine() throws SearchException;
 }
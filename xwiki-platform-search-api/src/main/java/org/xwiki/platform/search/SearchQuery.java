@@ -0,0 +1,370 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structured search query: the clauses of the main query, in the order they were added, the filters restricting the
+ * results without affecting their score and the boosts of the searched fields. Search engines compile it into their
+ * own query format.
+ * 
+ * @version $Id$
+ */
+public class SearchQuery
+{
+    /**
+     * How a clause or a filter affects the matching documents.
+     */
+    public enum Occur
+    {
+        /**
+         * The documents must match the clause.
+         */
+        MUST,
+
+        /**
+         * The documents matching the clause score higher.
+         */
+        SHOULD,
+
+        /**
+         * The documents must not match the clause.
+         */
+        MUST_NOT
+    }
+
+    /**
+     * A clause of the main query or a filter.
+     * 
+     * @version $Id$
+     */
+    public static class Clause
+    {
+        /**
+         * How the clause affects the matching documents.
+         */
+        private final Occur occur;
+
+        /**
+         * The field to search, null for the default fields.
+         */
+        private final String field;
+
+        /**
+         * The searched value.
+         */
+        private final String value;
+
+        /**
+         * Whether the value is a phrase.
+         */
+        private final boolean phrase;
+
+        /**
+         * @param occur how the clause affects the matching documents.
+         * @param field the field to search, null for the default fields.
+         * @param value the searched value.
+         * @param phrase whether the value is a phrase.
+         */
+        public Clause(Occur occur, String field, String value, boolean phrase)
+        {
+            this.occur = occur;
+            this.field = field;
+            this.value = value;
+            this.phrase = phrase;
+        }
+
+        /**
+         * @return how the clause affects the matching documents.
+         */
+        public Occur getOccur()
+        {
+            return this.occur;
+        }
+
+        /**
+         * @return the field to search, null for the default fields.
+         */
+        public String getField()
+        {
+            return this.field;
+        }
+
+        /**
+         * @return the searched value.
+         */
+        public String getValue()
+        {
+            return this.value;
+        }
+
+        /**
+         * @return whether the value is a phrase.
+         */
+        public boolean isPhrase()
+        {
+            return this.phrase;
+        }
+    }
+
+    /**
+     * Clauses of the main query.
+     */
+    private final List<Clause> clauses = new ArrayList<Clause>();
+
+    /**
+     * Filters.
+     */
+    private final List<Clause> filters = new ArrayList<Clause>();
+
+    /**
+     * Boosts of the searched fields, by field.
+     */
+    private final Map<String, Float> boosts = new LinkedHashMap<String, Float>();
+
+    /**
+     * Adds a term to search in the default fields. The term can use the query syntax of the search engine, e.g.
+     * wildcards.
+     * 
+     * @param occur how the term affects the matching documents.
+     * @param term the term.
+     * @return this query.
+     */
+    public SearchQuery addTerm(Occur occur, String term)
+    {
+        this.clauses.add(new Clause(occur, null, term, false));
+        return this;
+    }
+
+    /**
+     * Adds a phrase to search in the default fields.
+     * 
+     * @param occur how the phrase affects the matching documents.
+     * @param phrase the phrase, without quotes.
+     * @return this query.
+     */
+    public SearchQuery addPhrase(Occur occur, String phrase)
+    {
+        this.clauses.add(new Clause(occur, null, phrase, true));
+        return this;
+    }
+
+    /**
+     * Adds a value to search in a field. The value can use the query syntax of the search engine, e.g. wildcards.
+     * 
+     * @param occur how the clause affects the matching documents.
+     * @param field the field, without language suffix.
+     * @param value the value.
+     * @param phrase whether the value is a phrase.
+     * @return this query.
+     */
+    public SearchQuery addFieldClause(Occur occur, String field, String value, boolean phrase)
+    {
+        this.clauses.add(new Clause(occur, field, value, phrase));
+        return this;
+    }
+
+    /**
+     * Restricts the results to the documents having (or not having) a value in a field. Filters don't affect the
+     * score and are cached separately by the search engine.
+     * 
+     * @param occur {@link Occur#MUST} or {@link Occur#MUST_NOT}.
+     * @param field the field, without language suffix.
+     * @param value the exact value, or a range (<code>[* TO NOW]</code>) or a wildcard (<code>Main*</code>) of the
+     *            query syntax of the search engine.
+     * @return this query.
+     */
+    public SearchQuery addFilter(Occur occur, String field, String value)
+    {
+        this.filters.add(new Clause(occur, field, value, false));
+        return this;
+    }
+
+    /**
+     * @param field a field to search, without language suffix.
+     * @param boost the boost of the field.
+     * @return this query.
+     */
+    public SearchQuery addBoost(String field, float boost)
+    {
+        this.boosts.put(field, boost);
+        return this;
+    }
+
+    /**
+     * @return the clauses of the main query, in the order they were added.
+     */
+    public List<Clause> getClauses()
+    {
+        return Collections.unmodifiableList(this.clauses);
+    }
+
+    /**
+     * @return the filters.
+     */
+    public List<Clause> getFilters()
+    {
+        return Collections.unmodifiableList(this.filters);
+    }
+
+    /**
+     * @return the boosts of the searched fields, by field, in the order they were added.
+     */
+    public Map<String, Float> getBoosts()
+    {
+        return Collections.unmodifiableMap(this.boosts);
+    }
+
+    /**
+     * @param field a field.
+     * @return true if the query has a clause or a filter on the field.
+     */
+    public boolean hasField(String field)
+    {
+        for (Clause clause : this.clauses) {
+            if (field.equals(clause.getField())) {
+                return true;
+            }
+        }
+        for (Clause filter : this.filters) {
+            if (field.equals(filter.getField())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a query typed by a user: white space separated terms, <code>"quoted phrases"</code> and
+     * <code>field:value</code> clauses, each optionally prefixed by <code>+</code> or <code>-</code>. The values may be
+     * ranges such as <code>[* TO NOW]</code>, kept with their white spaces. The clauses keep their order and
+     * duplicates.
+     * 
+     * @param query the query.
+     * @return this query.
+     */
+    public SearchQuery parse(String query)
+    {
+        if (query == null) {
+            return this;
+        }
+
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(query.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            Occur occur = Occur.SHOULD;
+            char prefix = query.charAt(i);
+            if ((prefix == '+' || prefix == '-') && i + 1 < length) {
+                occur = prefix == '+' ? Occur.MUST : Occur.MUST_NOT;
+                i++;
+            }
+
+            String field = null;
+            int start = i;
+            while (i < length && !Character.isWhitespace(query.charAt(i)) && query.charAt(i) != '"') {
+                char c = query.charAt(i);
+                if (c == ':' && field == null && i > start) {
+                    field = query.substring(start, i);
+                    start = i + 1;
+                } else if ((c == '[' || c == '{') && i == start) {
+                    i = getRangeEnd(query, i);
+                }
+                i++;
+            }
+
+            if (i < length && query.charAt(i) == '"' && i == start) {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = length;
+                }
+                this.clauses.add(new Clause(occur, field, query.substring(i + 1, end), true));
+                i = Math.min(end + 1, length);
+            } else {
+                // Skip a quote in the middle of a term.
+                if (i < length && query.charAt(i) == '"') {
+                    i++;
+                }
+                String value = query.substring(start, Math.min(i, length)).replace("\"", "");
+                if (value.length() > 0) {
+                    this.clauses.add(new Clause(occur, field, value, false));
+                } else if (field != null) {
+                    this.clauses.add(new Clause(occur, null, field, false));
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param query a query.
+     * @param start index of the opening bracket of a range.
+     * @return index of the closing bracket of the range, the start index if the range isn't closed.
+     */
+    private int getRangeEnd(String query, int start)
+    {
+        for (int i = start + 1; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == ']' || c == '}') {
+                return i;
+            } else if (c == '"') {
+                break;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Parses boosts written as <code>field^boost</code>, separated by white spaces. Entries without a valid boost are
+     * ignored.
+     * 
+     * @param boostsString the boosts.
+     * @return this query.
+     */
+    public SearchQuery parseBoosts(String boostsString)
+    {
+        if (boostsString == null) {
+            return this;
+        }
+
+        for (String item : boostsString.trim().split("\\s+")) {
+            int index = item.indexOf('^');
+            if (index > 0) {
+                try {
+                    addBoost(item.substring(0, index), Float.parseFloat(item.substring(index + 1)));
+                } catch (NumberFormatException e) {
+                    // Not a boost.
+                }
+            }
+        }
+        return this;
+    }
+}
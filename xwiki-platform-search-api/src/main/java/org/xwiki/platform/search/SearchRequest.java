@@ -1,5 +1,6 @@
 package org.xwiki.platform.search;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,25 @@ import org.xwiki.model.reference.EntityReference;
 @Role
 public interface SearchRequest
 {
+    /**
+     * Profile of the type-ahead and quick searches: no facets, no highlighting.
+     */
+    String QUICK_SEARCH_PROFILE = "quicksearch";
+
+    /**
+     * Profile of the search page: facets on the spaces and languages and highlighting.
+     */
+    String ADVANCED_SEARCH_PROFILE = "advanced";
+
+    /**
+     * Profile of the searches made by scripts and services: no facets, no highlighting.
+     */
+    String API_PROFILE = "api";
+
+    /**
+     * Profile of the administration searches, using the default handler with its explain output and all its facets.
+     */
+    String ADMIN_PROFILE = "admin";
 
     /**
      * 
@@ -95,4 +115,55 @@ public interface SearchRequest
      */
     void setFilterParametersMap(Map<String, String> filterParametersMap);
 
+    /**
+     * @return the structured query, built from the query string, the filter parameters and the <code>qf</code> search
+     *         parameter unless it was set explicitly.
+     */
+    SearchQuery getQuery();
+
+    /**
+     * @param query the structured query, replacing the query string, the filter parameters and the <code>qf</code>
+     *            search parameter.
+     */
+    void setQuery(SearchQuery query);
+
+    /**
+     * @param grouped true to collapse the hits of a page, its attachments, objects and properties into a single result
+     *            holding the best hit, the other hits being available through {@link SearchResult#getMatches()}.
+     */
+    void setGrouped(boolean grouped);
+
+    /**
+     * @return true if the hits are grouped by page.
+     */
+    boolean isGrouped();
+
+    /**
+     * Restricts the attributes filled in the search results, so that the search engine only returns the fields they
+     * are read from. The identity, type, language, score and page of the results are always filled.
+     * 
+     * @param resultFields the names of the needed {@link SearchResult} attributes, e.g. {@link SearchResult#TITLE},
+     *            null for all of them.
+     */
+    void setResultFields(Collection<String> resultFields);
+
+    /**
+     * @return the names of the needed {@link SearchResult} attributes, null for all of them.
+     */
+    Collection<String> getResultFields();
+
+    /**
+     * Selects the request handler and the default parameters of the search, so that cheap searches don't pay for
+     * features they don't use. The profiles are configured in <code>xwiki.properties</code>.
+     * 
+     * @param profile the name of a search profile, e.g. {@link #QUICK_SEARCH_PROFILE}, null for the default profile
+     *            configured by <code>search.profiles.default</code>, {@link #API_PROFILE} if not set.
+     */
+    void setProfile(String profile);
+
+    /**
+     * @return the name of the search profile, null for the default profile.
+     */
+    String getProfile();
+
 }
@@ -97,6 +97,13 @@ public interface SearchResponse
      */
     boolean hasPrevious(int beginIndex);
 
+    /**
+     * Fetches the page of results following the results of this response, using the same number of results per page.
+     * 
+     * @return the next page of results, or null when this response holds the last page.
+     */
+    SearchResponse getNextPage();
+
     /**
      * @param queryResponse 
      * 
@@ -19,6 +19,10 @@
  */
 package org.xwiki.platform.search;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import org.xwiki.model.reference.DocumentReference;
 
 /**
@@ -26,6 +30,41 @@ import org.xwiki.model.reference.DocumentReference;
  */
 public class SearchResult
 {
+    /**
+     * Name of the title attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String TITLE = "title";
+
+    /**
+     * Name of the file name attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String FILE_NAME = "fileName";
+
+    /**
+     * Name of the attachment URL attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String URL = "url";
+
+    /**
+     * Name of the mime type attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String MIME_TYPE = "mimeType";
+
+    /**
+     * Name of the object name attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String OBJECT_NAME = "objectName";
+
+    /**
+     * Name of the property name attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String PROPERTY_NAME = "propertyName";
+
+    /**
+     * Name of the property value attribute, for {@link SearchRequest#setResultFields(Collection)}.
+     */
+    public static final String PROPERTY_VALUE = "propertyValue";
+
     /**
      * id of the document.
      */
@@ -110,6 +149,11 @@ public class SearchResult
      * Value of the property.
      */
     private String propertyValue;
+
+    /**
+     * Other matching attachments, objects and properties of the page, when the hits are grouped by page.
+     */
+    private List<SearchResult> matches = new ArrayList<SearchResult>();
     
     /**
      * 
@@ -389,5 +433,22 @@ public class SearchResult
         this.propertyValue = propertyValue;
     }
 
+    /**
+     * @return the other matching attachments, objects and properties of the page, when the hits are grouped by page,
+     *         in decreasing score order
+     */
+    public List<SearchResult> getMatches()
+    {
+        return matches;
+    }
+
+    /**
+     * @param match another matching attachment, object or property of the page
+     */
+    public void addMatch(SearchResult match)
+    {
+        this.matches.add(match);
+    }
+
     
 }
@@ -62,6 +62,18 @@ public interface BuildIndex
      */
     int buildWikiIndex(WikiReference wikiReference) throws SearchIndexingException, XWikiException;
 
+    /**
+     * Build the index for the given wiki.
+     * 
+     * @param wikiReference WikiReference reference to the Wiki
+     * @param delta if true, only the documents whose version differs from the indexed version are indexed.
+     * @return number of documents to index; in delta mode, the number of documents checked, the changed ones being
+     *         found while indexing.
+     * @throws SearchIndexingException Exception thrown in case of indexing errors.
+     * @throws XWikiException thrown in case of XWiki syntax errors.
+     */
+    int buildWikiIndex(WikiReference wikiReference, boolean delta) throws SearchIndexingException, XWikiException;
+
     /**
      * Build the index for the given space.
      * 
@@ -81,6 +93,14 @@ public interface BuildIndex
      */
     int buildWikiFarmIndex() throws SearchIndexingException, XWikiException;
 
+    /**
+     * Resumes the wiki and space builds interrupted by the last stop of the wiki, from their last checkpoint.
+     * 
+     * @return the number of resumed builds.
+     * @throws SearchIndexingException thrown in case of indexing errors.
+     */
+    int resumeIndexing() throws SearchIndexingException;
+
     /**
      * @param attachment reference to the attachment.
      * @param doc DocumentModelBridge.
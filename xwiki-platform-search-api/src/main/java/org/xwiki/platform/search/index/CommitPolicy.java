@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Decides when the updates sent to the search engine by the indexer are committed, i.e. made visible to searches.
+ * Bulk indexing jobs don't go through the policy, they commit once when they are done.
+ * 
+ * @version $Id$
+ */
+@Role
+public interface CommitPolicy
+{
+    /**
+     * @return the maximum time in milliseconds the search engine may wait before committing an update on its own, -1
+     *         if commits are only issued by the indexer.
+     */
+    int getCommitWithin();
+
+    /**
+     * Notifies the policy that updates have been sent to the search engine.
+     * 
+     * @param count number of added or deleted entries.
+     * @return true if the indexer should commit right away.
+     */
+    boolean onUpdate(int count);
+
+    /**
+     * Called periodically by the indexer.
+     * 
+     * @return true if the indexer should commit the pending updates now.
+     */
+    boolean isCommitDue();
+
+    /**
+     * @return the number of entries updated since the last commit, to be passed to {@link #onCommit(int)} once the
+     *         commit issued after this call is done.
+     */
+    int getPendingUpdates();
+
+    /**
+     * Notifies the policy that pending updates have been committed. The updates sent while the commit was running
+     * stay pending.
+     * 
+     * @param count number of pending updates, as returned by {@link #getPendingUpdates()} before the commit.
+     */
+    void onCommit(int count);
+}
@@ -97,6 +97,24 @@ public interface DocumentData
      * @return list of properties
      */
     List< ? > getInputProperties(DocumentReference documentReference);
+
+    /**
+     * Loads the document once and extracts the document, its attachments, objects and properties in search engine
+     * specific input format.
+     * 
+     * @param documentReference reference to the document
+     * @return list of documents, attachments, objects and properties
+     */
+    List< ? > getInputDocumentSnapshot(DocumentReference documentReference);
+
+    /**
+     * Extracts several documents like {@link #getInputDocumentSnapshot(DocumentReference)}, loading a page only once
+     * for its translations when they follow each other in the list.
+     * 
+     * @param documentReferences references to the documents, holding the language of the translation to extract
+     * @return list of documents, attachments, objects and properties
+     */
+    List< ? > getInputDocumentSnapshots(List<DocumentReference> documentReferences);
     
     /**
      * 
@@ -19,6 +19,7 @@
  */
 package org.xwiki.platform.search.index;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -62,6 +63,29 @@ public interface DocumentIndexer
      */
     void indexDocuments(EntityReference reference, List<DocumentReference> docs);
 
+    /**
+     * Index the documents read from an iterator. The documents are read as they get indexed, so the iterator can fetch
+     * them lazily, e.g. page by page from the database; it is used from the indexer thread.
+     * 
+     * @param reference Entity reference of Wiki or Space
+     * @param docs the documents to be indexed.
+     * @param total number of documents to be indexed, or an estimate of it, used for the indexer status.
+     */
+    void indexDocuments(EntityReference reference, Iterator<DocumentReference> docs, int total);
+
+    /**
+     * Index the documents read from an iterator, saving the progress of the job in a checkpoint from time to time so
+     * that it can be resumed if interrupted. The iterator must return the documents by full name, the translations of
+     * a page following each other.
+     * 
+     * @param reference Entity reference of Wiki or Space
+     * @param docs the documents to be indexed.
+     * @param total number of documents to be indexed, or an estimate of it, used for the indexer status.
+     * @param checkpoint the checkpoint of the job, deleted once the job is over, null if the job is not resumable.
+     */
+    void indexDocuments(EntityReference reference, Iterator<DocumentReference> docs, int total,
+        IndexCheckpoint checkpoint);
+
     /**
      * Delete the index for document.
      * 
@@ -87,6 +111,15 @@ public interface DocumentIndexer
      */
     void deleteIndex(EntityReference reference, List<DocumentReference> docs);
 
+    /**
+     * Looks up the version of the documents currently in the index.
+     * 
+     * @param documentIds ids of the documents, as computed by {@link DocumentData#getDocumentId(
+     *            org.xwiki.model.reference.DocumentReference)}.
+     * @return the indexed version of the documents, by id. Documents which are not indexed are missing.
+     */
+    Map<String, String> getIndexedVersions(List<String> documentIds);
+
     /**
      * Deletes the entire index of the current wiki.
      * 
@@ -94,6 +127,29 @@ public interface DocumentIndexer
      */
     boolean deleteEntireIndex();
 
+    /**
+     * Starts a rebuild of the entire index: the jobs scheduled from the calling thread until
+     * {@link #endRebuild(boolean)} index into a separate index, which is swapped with the live one once they are all
+     * done. Other updates are sent to both indexes in the meantime.
+     * 
+     * @throws SearchIndexingException if a rebuild is already running or the separate index can't be created.
+     */
+    void beginRebuild() throws SearchIndexingException;
+
+    /**
+     * Marks the end of the scheduling of the rebuild jobs.
+     * 
+     * @param swap true to swap the indexes when the rebuild jobs are done, false to abandon the rebuild.
+     */
+    void endRebuild(boolean swap);
+
+    /**
+     * Swaps the live index back with the one it replaced at the end of the last rebuild.
+     * 
+     * @return true if the indexes were swapped.
+     */
+    boolean rollbackRebuild();
+
     /**
      * Sets the SearchEngineObject.
      * 
@@ -0,0 +1,46 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Keeps the text extracted from attachments so that unchanged attachments are not parsed again each time their
+ * document is indexed.
+ * 
+ * @version $Id$
+ */
+@Role
+public interface ExtractionCache
+{
+    /**
+     * @param key identifies the attachment content, e.g. its reference and version.
+     * @return the chunks of text extracted from the attachment content, null if they are not in the cache.
+     */
+    List<String> get(String key);
+
+    /**
+     * @param key identifies the attachment content, e.g. its reference and version.
+     * @param chunks the chunks of text extracted from the attachment content.
+     */
+    void put(String key, List<String> chunks);
+}
@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index;
+
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Progress of a bulk indexing job over the documents of a wiki or space, saved while the job runs so that it can be
+ * resumed after a restart. The documents are enumerated by full name, so the position of the job is the full name of
+ * the last page whose documents are all indexed.
+ * 
+ * @version $Id$
+ */
+public class IndexCheckpoint
+{
+    /**
+     * Identifies the job.
+     */
+    private String id;
+
+    /**
+     * The wiki.
+     */
+    private String wiki;
+
+    /**
+     * The space, null for all the spaces of the wiki.
+     */
+    private String space;
+
+    /**
+     * Whether only the documents whose version differs from the indexed version are indexed.
+     */
+    private boolean delta;
+
+    /**
+     * Full name of the last page whose documents are all indexed, null if none is yet.
+     */
+    private String lastFullName;
+
+    /**
+     * Number of documents indexed so far.
+     */
+    private int indexed;
+
+    /**
+     * Number of documents of the job.
+     */
+    private int total;
+
+    /**
+     * Default constructor, used when reading saved checkpoints.
+     */
+    public IndexCheckpoint()
+    {
+    }
+
+    /**
+     * @param id identifies the job.
+     * @param wiki the wiki.
+     * @param space the space, null for all the spaces of the wiki.
+     * @param delta whether only the documents whose version differs from the indexed version are indexed.
+     * @param total number of documents of the job.
+     */
+    public IndexCheckpoint(String id, String wiki, String space, boolean delta, int total)
+    {
+        this.id = id;
+        this.wiki = wiki;
+        this.space = space;
+        this.delta = delta;
+        this.total = total;
+    }
+
+    /**
+     * @return the identifier of the job.
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return the wiki.
+     */
+    public String getWiki()
+    {
+        return this.wiki;
+    }
+
+    /**
+     * @return the space, null for all the spaces of the wiki.
+     */
+    public String getSpace()
+    {
+        return this.space;
+    }
+
+    /**
+     * @return whether only the documents whose version differs from the indexed version are indexed.
+     */
+    public boolean isDelta()
+    {
+        return this.delta;
+    }
+
+    /**
+     * @return the full name of the last page whose documents are all indexed, null if none is yet.
+     */
+    public String getLastFullName()
+    {
+        return this.lastFullName;
+    }
+
+    /**
+     * @return the number of documents indexed so far.
+     */
+    public int getIndexed()
+    {
+        return this.indexed;
+    }
+
+    /**
+     * @return the number of documents of the job.
+     */
+    public int getTotal()
+    {
+        return this.total;
+    }
+
+    /**
+     * Moves the checkpoint after a page.
+     * 
+     * @param lastDocument the last document of a page whose documents are all indexed, any translation of it.
+     * @param indexed number of documents indexed so far.
+     */
+    public void setPosition(DocumentReference lastDocument, int indexed)
+    {
+        this.lastFullName = lastDocument.getLastSpaceReference().getName() + "." + lastDocument.getName();
+        this.indexed = indexed;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Persists the checkpoints of the bulk indexing jobs so that the jobs interrupted by a restart can be resumed.
+ * 
+ * @version $Id$
+ */
+@Role
+public interface IndexCheckpointStore
+{
+    /**
+     * @param checkpoint the checkpoint to save, replacing the previous checkpoint of the same job.
+     */
+    void save(IndexCheckpoint checkpoint);
+
+    /**
+     * @param checkpoint the checkpoint of a job which is over.
+     */
+    void delete(IndexCheckpoint checkpoint);
+
+    /**
+     * @return the checkpoints of the jobs which did not complete.
+     */
+    List<IndexCheckpoint> getCheckpoints();
+}
@@ -32,12 +32,19 @@ import org.xwiki.model.reference.WikiReference;
 public interface RebuildIndex
 {
     /**
-     * Rebuilds the index for the whole wiki farm.
+     * Rebuilds the index for the whole wiki farm. The current index is searched until the rebuilt one is complete.
      * 
      * @return the Number of documents scheduled for indexing. -1 in case of errors.
      */
     int reBuildFarmIndex();
 
+    /**
+     * Replaces the index with the one the last farm rebuild replaced.
+     * 
+     * @return true if the previous index is live again.
+     */
+    boolean rollbackFarmIndex();
+
     /**
      * Rebuilds the index for the given wiki's in a wiki farm.
      * 
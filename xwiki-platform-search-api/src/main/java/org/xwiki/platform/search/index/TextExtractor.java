@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Extracts the text of binary contents, like attachments, in order to index it.
+ * 
+ * @version $Id$
+ */
+@Role
+public interface TextExtractor
+{
+    /**
+     * Extracts the text of a content. The extraction is bounded in time and in size: the text of a content taking too
+     * long to parse is dropped and the text of a content producing too many characters is truncated. The text is
+     * streamed into chunks, so that no single buffer has to hold the whole text.
+     * 
+     * @param name name of the content, used to detect its type.
+     * @param content the content, closed when the extraction is over.
+     * @param size size of the content in bytes, -1 if unknown.
+     * @return the extracted text split in chunks, null if the content can't be extracted.
+     */
+    List<String> extract(String name, InputStream content, long size);
+
+    /**
+     * @return counters of the extractions done so far, by name: extracted, truncated, failed, timedOut, skipped, slow
+     *         and totalTime.
+     */
+    Map<String, Long> getStatistics();
+}
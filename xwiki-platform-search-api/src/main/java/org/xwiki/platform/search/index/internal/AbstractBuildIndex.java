@@ -19,6 +19,8 @@
  */
 package org.xwiki.platform.search.index.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -46,6 +48,10 @@ public abstract class AbstractBuildIndex extends DocumentHelper implements Build
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Each wiki is indexed by its own job, so the wikis are indexed concurrently up to the number of jobs the indexer
+     * runs at once. A wiki which can't be listed doesn't prevent indexing the others, but the failure is reported once
+     * all the wikis have been scheduled.
      * 
      * @see org.xwiki.platform.search.index.BuildIndex#buildWikiFarmIndex()
      */
@@ -53,14 +59,31 @@ public abstract class AbstractBuildIndex extends DocumentHelper implements Build
     public int buildWikiFarmIndex() throws SearchIndexingException, XWikiException
     {
         XWikiContext xcontext = getXWikiContext();
-        int totalDocCount = 0;
+        List<String> wikis;
         if (xcontext.getWiki().isVirtualMode()) {
-            List<String> wikis = xcontext.getWiki().getVirtualWikisDatabaseNames(xcontext);
-            for (String wikiName : wikis) {
-                WikiReference wikiReference = new WikiReference(wikiName);
-                totalDocCount += buildWikiIndex(wikiReference);
+            wikis = new ArrayList<String>(xcontext.getWiki().getVirtualWikisDatabaseNames(xcontext));
+            if (!wikis.contains(xcontext.getMainXWiki())) {
+                wikis.add(0, xcontext.getMainXWiki());
+            }
+        } else {
+            wikis = Collections.singletonList(xcontext.getMainXWiki());
+        }
+
+        int totalDocCount = 0;
+        List<String> failedWikis = new ArrayList<String>();
+        for (String wikiName : wikis) {
+            try {
+                int docCount = buildWikiIndex(new WikiReference(wikiName));
+                logger.info("Scheduled [" + docCount + "] documents of wiki [" + wikiName + "] for indexing");
+                totalDocCount += docCount;
+            } catch (Exception e) {
+                logger.error("Failed to index wiki [" + wikiName + "]", e);
+                failedWikis.add(wikiName);
             }
         }
+        if (!failedWikis.isEmpty()) {
+            throw new SearchIndexingException("Failed to index the wikis " + failedWikis);
+        }
         return totalDocCount;
     }
 
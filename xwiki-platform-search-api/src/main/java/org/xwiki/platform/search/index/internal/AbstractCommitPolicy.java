@@ -0,0 +1,111 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.platform.search.index.CommitPolicy;
+
+/**
+ * Keeps track of the updates not committed yet.
+ * 
+ * @version $Id$
+ */
+public abstract class AbstractCommitPolicy implements CommitPolicy
+{
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    protected ConfigurationSource configuration;
+
+    /**
+     * Number of entries updated since the last commit.
+     */
+    protected final AtomicInteger pendingUpdates = new AtomicInteger();
+
+    /**
+     * Time of the first update since the last commit.
+     */
+    protected long firstPendingUpdateTime;
+
+    /**
+     * Time of the last update.
+     */
+    protected long lastUpdateTime;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#getCommitWithin()
+     */
+    @Override
+    public int getCommitWithin()
+    {
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#onUpdate(int)
+     */
+    @Override
+    public synchronized boolean onUpdate(int count)
+    {
+        long now = System.currentTimeMillis();
+        if (this.pendingUpdates.getAndAdd(count) == 0) {
+            this.firstPendingUpdateTime = now;
+        }
+        this.lastUpdateTime = now;
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#getPendingUpdates()
+     */
+    @Override
+    public int getPendingUpdates()
+    {
+        return this.pendingUpdates.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#onCommit(int)
+     */
+    @Override
+    public synchronized void onCommit(int count)
+    {
+        if (this.pendingUpdates.addAndGet(-count) > 0) {
+            // The remaining updates were sent while committing.
+            this.firstPendingUpdateTime = this.lastUpdateTime;
+        }
+    }
+}
@@ -88,12 +88,22 @@ public abstract class AbstractDocumentData extends DocumentHelper implements Doc
      */
     @Override
     public String getDocumentId(DocumentReference documentReference)
+    {
+        return getDocumentId(documentReference, getLanguage(documentReference));
+    }
+
+    /**
+     * @param documentReference reference to the document.
+     * @param language language of the document.
+     * @return document id.
+     */
+    protected String getDocumentId(DocumentReference documentReference, String language)
     {
         StringBuffer docId = new StringBuffer();
         docId.append(documentReference.getWikiReference().getName().toLowerCase()).append(ID_SEPERATOR);
         docId.append(documentReference.getLastSpaceReference().getName().toLowerCase()).append(ID_SEPERATOR);
         docId.append(documentReference.getName().toLowerCase()).append(ID_SEPERATOR);
-        docId.append(getLanguage(documentReference));
+        docId.append(language);
 
         return docId.toString();
     }
@@ -105,11 +115,22 @@ public abstract class AbstractDocumentData extends DocumentHelper implements Doc
      */
     @Override
     public String getAttachmentId(AttachmentReference attachmentReference)
+    {
+        return getAttachmentId(getDocumentId(attachmentReference.getDocumentReference()),
+            attachmentReference.getName());
+    }
+
+    /**
+     * @param documentId id of the document holding the attachment.
+     * @param name name of the attachment.
+     * @return attachment id.
+     */
+    protected String getAttachmentId(String documentId, String name)
     {
         StringBuffer attachmentId = new StringBuffer();
-        attachmentId.append(getDocumentId(attachmentReference.getDocumentReference()));
+        attachmentId.append(documentId);
         attachmentId.append(".file.");
-        attachmentId.append(attachmentReference.getName().toLowerCase());
+        attachmentId.append(name.toLowerCase());
         return attachmentId.toString();
     }
 
@@ -125,8 +146,18 @@ public abstract class AbstractDocumentData extends DocumentHelper implements Doc
         if (object instanceof BaseObject) {
             baseObject = (BaseObject) object;
         }
+        return getObjectId(getDocumentId(documentReference), baseObject);
+    }
+
+    /**
+     * @param documentId id of the document holding the object.
+     * @param baseObject the object.
+     * @return object id.
+     */
+    protected String getObjectId(String documentId, BaseObject baseObject)
+    {
         StringBuffer buffer = new StringBuffer();
-        buffer.append(getDocumentId(documentReference));
+        buffer.append(documentId);
         buffer.append(ID_SEPERATOR);
         buffer.append(baseObject.getReference().getName().toLowerCase());
         buffer.append(ID_SEPERATOR);
@@ -146,8 +177,18 @@ public abstract class AbstractDocumentData extends DocumentHelper implements Doc
         if (property instanceof BaseProperty) {
             baseProperty = (BaseProperty) property;
         }
+        return getPropertyId(getDocumentId(documentReference), baseProperty);
+    }
+
+    /**
+     * @param documentId id of the document holding the property.
+     * @param baseProperty the object property.
+     * @return property id.
+     */
+    protected String getPropertyId(String documentId, BaseProperty baseProperty)
+    {
         StringBuffer buffer = new StringBuffer();
-        buffer.append(getDocumentId(documentReference));
+        buffer.append(documentId);
         buffer.append(ID_SEPERATOR);
         buffer.append(baseProperty.getName().toLowerCase());
         buffer.append(ID_SEPERATOR);
@@ -166,11 +207,8 @@ public abstract class AbstractDocumentData extends DocumentHelper implements Doc
             if (documentReference.getLocale() != null
                 && !StringUtils.isEmpty(documentReference.getLocale().getDisplayLanguage())) {
                 language = documentReference.getLocale().toString();
-            } else if (!StringUtils.isEmpty(documentAccessBridge.getDocument(documentReference).getRealLanguage())) {
-                language = documentAccessBridge.getDocument(documentReference).getRealLanguage();
             } else {
-                // Multilingual and Default placeholder
-                language = "en";
+                language = getLanguage(documentAccessBridge.getDocument(documentReference).getRealLanguage());
             }
         } catch (Exception e) {
             logger.error("Exception while fetching the language of the document - " + documentReference);
@@ -178,6 +216,33 @@ public abstract class AbstractDocumentData extends DocumentHelper implements Doc
         return language;
     }
 
+    /**
+     * @param documentReference reference to the document.
+     * @param document the loaded document.
+     * @return String language
+     */
+    protected String getLanguage(DocumentReference documentReference, XWikiDocument document)
+    {
+        if (documentReference.getLocale() != null
+            && !StringUtils.isEmpty(documentReference.getLocale().getDisplayLanguage())) {
+            return documentReference.getLocale().toString();
+        }
+        return getLanguage(document.getRealLanguage());
+    }
+
+    /**
+     * @param realLanguage the real language of a document.
+     * @return the language used in the index.
+     */
+    private String getLanguage(String realLanguage)
+    {
+        if (!StringUtils.isEmpty(realLanguage)) {
+            return realLanguage;
+        }
+        // Multilingual and Default placeholder
+        return "en";
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -26,9 +26,15 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
+import org.xwiki.platform.search.index.BuildIndex;
+import org.xwiki.platform.search.index.DeleteIndex;
+import org.xwiki.platform.search.index.DocumentIndexer;
 import org.xwiki.platform.search.index.RebuildIndex;
+import org.xwiki.platform.search.index.SearchIndexingException;
 
 /**
+ * Rebuilds the index of the farm into a separate index which replaces the live one when complete, and the index of a
+ * wiki or a space by deleting it and then building it again.
  * 
  * @version $Id$
  */
@@ -40,6 +46,21 @@ public abstract class AbstractRebuildIndex implements RebuildIndex
     @Inject
     protected Logger logger;
 
+    /**
+     * @return the component building the index.
+     */
+    protected abstract BuildIndex getBuildIndex();
+
+    /**
+     * @return the component deleting the index.
+     */
+    protected abstract DeleteIndex getDeleteIndex();
+
+    /**
+     * @return the document indexer.
+     */
+    protected abstract DocumentIndexer getDocumentIndexer();
+
     /**
      * {@inheritDoc}
      * 
@@ -48,8 +69,37 @@ public abstract class AbstractRebuildIndex implements RebuildIndex
     @Override
     public int reBuildFarmIndex()
     {
+        DocumentIndexer indexer = getDocumentIndexer();
+        try {
+            indexer.beginRebuild();
+        } catch (SearchIndexingException e) {
+            logger.error("Failed to start rebuilding the index of the wiki farm", e);
+            return -1;
+        }
+
+        // The live index keeps being searched until the rebuilt one is complete.
+        boolean scheduled = false;
+        try {
+            int docCount = getBuildIndex().buildWikiFarmIndex();
+            scheduled = true;
+            return docCount;
+        } catch (Exception e) {
+            logger.error("Failed to rebuild the index of the wiki farm", e);
+        } finally {
+            indexer.endRebuild(scheduled);
+        }
+        return -1;
+    }
 
-        return 0;
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.RebuildIndex#rollbackFarmIndex()
+     */
+    @Override
+    public boolean rollbackFarmIndex()
+    {
+        return getDocumentIndexer().rollbackRebuild();
     }
 
     /**
@@ -60,8 +110,17 @@ public abstract class AbstractRebuildIndex implements RebuildIndex
     @Override
     public int reBuildFarmIndex(List<WikiReference> wikis)
     {
-
-        return 0;
+        int totalDocCount = 0;
+        boolean failed = false;
+        for (WikiReference wikiReference : wikis) {
+            int docCount = reBuildWikiIndex(wikiReference);
+            if (docCount < 0) {
+                failed = true;
+            } else {
+                totalDocCount += docCount;
+            }
+        }
+        return failed ? -1 : totalDocCount;
     }
 
     /**
@@ -72,8 +131,13 @@ public abstract class AbstractRebuildIndex implements RebuildIndex
     @Override
     public int reBuildWikiIndex(WikiReference wikiReference)
     {
-
-        return 0;
+        try {
+            getDeleteIndex().deleteWikiIndex(wikiReference);
+            return getBuildIndex().buildWikiIndex(wikiReference);
+        } catch (Exception e) {
+            logger.error("Failed to rebuild the index of wiki [" + wikiReference.getName() + "]", e);
+        }
+        return -1;
     }
 
     /**
@@ -84,8 +148,13 @@ public abstract class AbstractRebuildIndex implements RebuildIndex
     @Override
     public int reBuildSpaceIndex(SpaceReference spaceReference)
     {
-
-        return 0;
+        try {
+            getDeleteIndex().deleteSpaceIndex(spaceReference);
+            return getBuildIndex().buildWikiSpaceIndex(spaceReference);
+        } catch (Exception e) {
+            logger.error("Failed to rebuild the index of space [" + spaceReference.getName() + "]", e);
+        }
+        return -1;
     }
 
 }
@@ -19,10 +19,22 @@
  */
 package org.xwiki.platform.search.index.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.slf4j.Logger;
 import org.xwiki.bridge.DocumentModelBridge;
@@ -30,10 +42,20 @@ import org.xwiki.bridge.event.DocumentCreatedEvent;
 import org.xwiki.bridge.event.DocumentDeletedEvent;
 import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
 import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.event.Event;
 import org.xwiki.platform.search.index.SearchIndex;
+import org.xwiki.platform.search.internal.DocumentHelper;
 
 import com.xpn.xwiki.internal.event.AbstractAttachmentEvent;
 import com.xpn.xwiki.internal.event.AttachmentAddedEvent;
@@ -41,9 +63,14 @@ import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
 import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
 
 /**
+ * Keeps the index up to date with the document and attachment events. The events only queue an update, repeated
+ * updates of the same entity are coalesced until the entity has been left alone for a while and the updates are then
+ * applied in batches by background threads, so saving a document doesn't wait for the index.
+ * 
  * @version $Id$
  */
-public abstract class AbstractSearchIndex implements SearchIndex, EventListener
+public abstract class AbstractSearchIndex extends DocumentHelper implements SearchIndex, EventListener,
+    Initializable, Disposable
 {
 
     /**
@@ -53,12 +80,224 @@ public abstract class AbstractSearchIndex implements SearchIndex, EventListener
         new DocumentCreatedEvent(), new DocumentDeletedEvent(), new AttachmentAddedEvent(),
         new AttachmentDeletedEvent(), new AttachmentUpdatedEvent());
 
+    /**
+     * Name of the threads applying the updates.
+     */
+    private static final String THREAD_NAME = "SearchIndexUpdater";
+
     /**
      * Logger.
      */
     @Inject
     protected Logger logger;
 
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Updates waiting to be applied, by entity. Guarded by itself.
+     */
+    private final Map<EntityReference, IndexUpdate> pendingUpdates = new LinkedHashMap<EntityReference, IndexUpdate>();
+
+    /**
+     * Time in milliseconds an entity has to be left alone before its update is applied.
+     */
+    private long delay;
+
+    /**
+     * Maximum time in milliseconds an update can be postponed by newer updates of the same entity.
+     */
+    private long maxDelay;
+
+    /**
+     * Hands the updates which are ready over to the workers.
+     */
+    private ScheduledExecutorService dispatcher;
+
+    /**
+     * Applies the updates.
+     */
+    private ExecutorService workers;
+
+    /**
+     * The kinds of updates.
+     */
+    private enum IndexAction
+    {
+        /**
+         * (Re)index a document.
+         */
+        INDEX_DOCUMENT,
+
+        /**
+         * Remove a document from the index.
+         */
+        DELETE_DOCUMENT,
+
+        /**
+         * (Re)index an attachment.
+         */
+        INDEX_ATTACHMENT,
+
+        /**
+         * Remove an attachment from the index.
+         */
+        DELETE_ATTACHMENT
+    }
+
+    /**
+     * The latest update queued for an entity.
+     * 
+     * @version $Id$
+     */
+    private static class IndexUpdate
+    {
+        /**
+         * The update to apply.
+         */
+        private final IndexAction action;
+
+        /**
+         * The updated entity.
+         */
+        private final EntityReference reference;
+
+        /**
+         * The document the event was sent for.
+         */
+        private final DocumentModelBridge document;
+
+        /**
+         * Time the first update not applied yet was queued.
+         */
+        private final long firstTime;
+
+        /**
+         * Time the update was queued.
+         */
+        private final long time;
+
+        /**
+         * @param action the update to apply.
+         * @param reference the updated entity.
+         * @param document the document the event was sent for.
+         * @param firstTime time the first update not applied yet was queued.
+         * @param time time the update was queued.
+         */
+        public IndexUpdate(IndexAction action, EntityReference reference, DocumentModelBridge document,
+            long firstTime, long time)
+        {
+            this.action = action;
+            this.reference = reference;
+            this.document = document;
+            this.firstTime = firstTime;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Applies a batch of updates.
+     * 
+     * @version $Id$
+     */
+    private class UpdateTask implements Runnable
+    {
+        /**
+         * The updates to apply.
+         */
+        private final List<IndexUpdate> updates;
+
+        /**
+         * @param updates the updates to apply.
+         */
+        public UpdateTask(List<IndexUpdate> updates)
+        {
+            this.updates = updates;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run()
+        {
+            ExecutionContext context = new ExecutionContext();
+            try {
+                executionContextManager.initialize(context);
+            } catch (ExecutionContextException e) {
+                logger.error("Failed to initialize the search index update execution context", e);
+                return;
+            }
+
+            execution.pushContext(context);
+            try {
+                applyUpdates(this.updates);
+            } finally {
+                execution.removeContext();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.delay = this.configuration.getProperty("search.indexer.eventDelay", 2000L);
+        this.maxDelay = this.configuration.getProperty("search.indexer.eventMaxDelay", 30000L);
+        int threads = this.configuration.getProperty("search.indexer.eventThreads", 1);
+
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        };
+        this.workers = Executors.newFixedThreadPool(threads, threadFactory);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+        long period = Math.max(100L, Math.min(this.delay, this.maxDelay) / 2);
+        this.dispatcher.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                dispatch();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Disposable#dispose()
+     */
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.dispatcher.shutdownNow();
+        this.workers.shutdownNow();
+        synchronized (this.pendingUpdates) {
+            if (!this.pendingUpdates.isEmpty()) {
+                logger.warn("Dropping [" + this.pendingUpdates.size() + "] pending search index updates");
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -79,29 +318,107 @@ public abstract class AbstractSearchIndex implements SearchIndex, EventListener
     @Override
     public void onEvent(Event event, Object source, Object data)
     {
+        DocumentModelBridge document = (DocumentModelBridge) source;
+        if (event instanceof DocumentUpdatedEvent || event instanceof DocumentCreatedEvent) {
+            enqueue(IndexAction.INDEX_DOCUMENT, document.getDocumentReference(), document);
+        } else if (event instanceof DocumentDeletedEvent) {
+            enqueue(IndexAction.DELETE_DOCUMENT, document.getDocumentReference(), document);
+        } else if (event instanceof AttachmentUpdatedEvent || event instanceof AttachmentAddedEvent) {
+            AttachmentReference attachref =
+                new AttachmentReference(((AbstractAttachmentEvent) event).getName(), document.getDocumentReference());
+            enqueue(IndexAction.INDEX_ATTACHMENT, attachref, document);
+        } else if (event instanceof AttachmentDeletedEvent) {
+            AttachmentReference attachref =
+                new AttachmentReference(((AbstractAttachmentEvent) event).getName(), document.getDocumentReference());
+            enqueue(IndexAction.DELETE_ATTACHMENT, attachref, document);
+        } else if (event instanceof WikiDeletedEvent) {
+            // TO DO
+        }
+    }
+
+    /**
+     * Queues an update, replacing the update pending for the same entity if any.
+     * 
+     * @param action the update to apply.
+     * @param reference the updated entity.
+     * @param document the document the event was sent for.
+     */
+    private void enqueue(IndexAction action, EntityReference reference, DocumentModelBridge document)
+    {
+        long now = System.currentTimeMillis();
+        synchronized (this.pendingUpdates) {
+            IndexUpdate previous = this.pendingUpdates.get(reference);
+            long firstTime = previous != null ? previous.firstTime : now;
+            this.pendingUpdates.put(reference, new IndexUpdate(action, reference, document, firstTime, now));
+        }
+    }
+
+    /**
+     * Hands the updates of the entities which have been left alone long enough over to the workers.
+     */
+    private void dispatch()
+    {
+        List<IndexUpdate> ready = new ArrayList<IndexUpdate>();
+        long now = System.currentTimeMillis();
+        synchronized (this.pendingUpdates) {
+            Iterator<IndexUpdate> it = this.pendingUpdates.values().iterator();
+            while (it.hasNext()) {
+                IndexUpdate update = it.next();
+                if (now - update.time >= this.delay || now - update.firstTime >= this.maxDelay) {
+                    ready.add(update);
+                    it.remove();
+                }
+            }
+        }
+
+        if (!ready.isEmpty()) {
+            this.workers.execute(new UpdateTask(ready));
+        }
+    }
+
+    /**
+     * Applies a batch of updates. The documents to index are indexed together and the attachments of these documents
+     * are not indexed separately since they are indexed with the document.
+     * 
+     * @param updates the updates to apply.
+     */
+    private void applyUpdates(List<IndexUpdate> updates)
+    {
+        List<DocumentReference> documents = new ArrayList<DocumentReference>();
+        for (IndexUpdate update : updates) {
+            if (update.action == IndexAction.INDEX_DOCUMENT) {
+                documents.add((DocumentReference) update.reference);
+            }
+        }
+        Set<DocumentReference> indexedDocuments = new HashSet<DocumentReference>(documents);
+
+        for (IndexUpdate update : updates) {
+            try {
+                if (update.action == IndexAction.DELETE_DOCUMENT) {
+                    getDeleteIndexInstance().deleteDocumentIndex((DocumentReference) update.reference);
+                } else if (update.action == IndexAction.INDEX_ATTACHMENT) {
+                    AttachmentReference attachref = (AttachmentReference) update.reference;
+                    if (!indexedDocuments.contains(attachref.getDocumentReference())) {
+                        getBuildIndexInstance().buildAttachmentIndex(attachref, update.document);
+                    }
+                } else if (update.action == IndexAction.DELETE_ATTACHMENT) {
+                    getDeleteIndexInstance().deleteAttachmentIndex((AttachmentReference) update.reference,
+                        update.document);
+                }
+            } catch (Exception e) {
+                logger.error("Exception during " + update.action + " of [" + update.reference
+                    + "], document build/delete index failed.", e);
+            }
+        }
+
         try {
-            if (event instanceof DocumentUpdatedEvent || event instanceof DocumentCreatedEvent) {
-                getBuildIndexInstance().buildDocumentIndex(((DocumentModelBridge) source).getDocumentReference());
-            } else if (event instanceof DocumentDeletedEvent) {
-                getDeleteIndexInstance().deleteDocumentIndex(((DocumentModelBridge) source).getDocumentReference());
-            } else if (event instanceof AttachmentUpdatedEvent || event instanceof AttachmentAddedEvent) {
-                AttachmentReference attachref =
-                    new AttachmentReference(((AbstractAttachmentEvent) event).getName(),
-                        ((DocumentModelBridge) source).getDocumentReference());
-                getBuildIndexInstance().buildAttachmentIndex(attachref, (DocumentModelBridge) source);
-
-            } else if (event instanceof AttachmentDeletedEvent) {
-
-                AttachmentReference attachref =
-                    new AttachmentReference(((AbstractAttachmentEvent) event).getName(),
-                        ((DocumentModelBridge) source).getDocumentReference());
-                getDeleteIndexInstance().deleteAttachmentIndex(attachref, (DocumentModelBridge) source);
-
-            } else if (event instanceof WikiDeletedEvent) {
-                // TO DO
+            if (documents.size() == 1) {
+                getBuildIndexInstance().buildDocumentIndex(documents.get(0));
+            } else if (!documents.isEmpty()) {
+                getBuildIndexInstance().buildDocumentIndex(documents);
             }
         } catch (Exception e) {
-            logger.error("Exception during " + event.toString() + " event, document build/delete index failed.", e);
+            logger.error("Exception while indexing [" + documents.size() + "] updated documents.", e);
         }
     }
 }
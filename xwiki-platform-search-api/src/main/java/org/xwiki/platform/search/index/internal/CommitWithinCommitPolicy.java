@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Lets the search engine commit the updates itself, at most <code>search.indexer.commitWithin</code> milliseconds
+ * after they have been sent.
+ * 
+ * @version $Id$
+ */
+@Component
+@Named("commitwithin")
+@Singleton
+public class CommitWithinCommitPolicy extends AbstractCommitPolicy implements Initializable
+{
+    /**
+     * Maximum time in milliseconds before the updates are committed.
+     */
+    private int commitWithin;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.commitWithin = this.configuration.getProperty("search.indexer.commitWithin", 10000);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.internal.AbstractCommitPolicy#getCommitWithin()
+     */
+    @Override
+    public int getCommitWithin()
+    {
+        return this.commitWithin;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#isCommitDue()
+     */
+    @Override
+    public boolean isCommitDue()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.platform.search.index.ExtractionCache;
+
+/**
+ * Stores the extracted texts gzipped in the permanent directory, one file per key holding the chunks of text separated
+ * by null characters, and evicts the least recently used files once their total size exceeds
+ * <code>search.indexer.extractionCache.maxSize</code> bytes.
+ * 
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultExtractionCache implements ExtractionCache, Initializable
+{
+    /**
+     * Encoding of the cached texts.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Extension of the cache files.
+     */
+    private static final String EXTENSION = ".txt.gz";
+
+    /**
+     * Ends each chunk in the cache files. Extracted texts don't contain null characters.
+     */
+    private static final char CHUNK_SEPARATOR = '\0';
+
+    /**
+     * Size of the buffer used to read the cache files.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Logger.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Used to get the permanent directory.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Directory holding the cache files.
+     */
+    private File directory;
+
+    /**
+     * Maximum total size of the cache files, in bytes. The cache is disabled when not positive.
+     */
+    private long maxSize;
+
+    /**
+     * Size of the cache files by file name, from the least to the most recently used. Guarded by itself.
+     */
+    private final Map<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Total size of the cache files, in bytes.
+     */
+    private long totalSize;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.maxSize = this.configuration.getProperty("search.indexer.extractionCache.maxSize", 512L * 1024 * 1024);
+        this.directory = new File(this.environment.getPermanentDirectory(), "search/extraction");
+        if (this.maxSize <= 0) {
+            return;
+        }
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            this.logger.error("Failed to create the extraction cache directory [" + this.directory
+                + "], the extraction cache is disabled");
+            this.maxSize = 0;
+            return;
+        }
+
+        // Restore the usage order from the last modification dates, which are updated on each access.
+        File[] existing = this.directory.listFiles();
+        Arrays.sort(existing, new Comparator<File>()
+        {
+            @Override
+            public int compare(File file1, File file2)
+            {
+                long diff = file1.lastModified() - file2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        synchronized (this.files) {
+            for (File file : existing) {
+                if (file.getName().endsWith(EXTENSION)) {
+                    this.files.put(file.getName(), file.length());
+                    this.totalSize += file.length();
+                } else {
+                    // Leftover of an interrupted write.
+                    file.delete();
+                }
+            }
+            evict();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.ExtractionCache#get(java.lang.String)
+     */
+    @Override
+    public List<String> get(String key)
+    {
+        if (this.maxSize <= 0) {
+            return null;
+        }
+
+        String name = getFileName(key);
+        synchronized (this.files) {
+            if (this.files.get(name) == null) {
+                return null;
+            }
+        }
+
+        File file = new File(this.directory, name);
+        Reader in = null;
+        try {
+            in = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), ENCODING);
+            List<String> chunks = readChunks(in);
+            file.setLastModified(System.currentTimeMillis());
+            return chunks;
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the extraction cache file [" + file + "]: " + e.getMessage());
+            remove(name);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.ExtractionCache#put(java.lang.String, java.lang.String)
+     */
+    @Override
+    public void put(String key, List<String> chunks)
+    {
+        if (this.maxSize <= 0 || chunks == null) {
+            return;
+        }
+
+        String name = getFileName(key);
+        File tmpFile = new File(this.directory, name + "." + Thread.currentThread().getId() + ".tmp");
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmpFile)), ENCODING);
+            for (String chunk : chunks) {
+                out.write(chunk);
+                out.write(CHUNK_SEPARATOR);
+            }
+            out.close();
+            out = null;
+
+            File file = new File(this.directory, name);
+            synchronized (this.files) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Failed to rename [" + tmpFile + "] to [" + file + "]");
+                }
+                Long previousSize = this.files.put(name, file.length());
+                if (previousSize != null) {
+                    this.totalSize -= previousSize;
+                }
+                this.totalSize += file.length();
+                evict();
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to write the extraction cache file for [" + key + "]: " + e.getMessage());
+            tmpFile.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * @param in the content of a cache file.
+     * @return the chunks of text stored in the file.
+     * @throws IOException if the file can't be read.
+     */
+    private List<String> readChunks(Reader in) throws IOException
+    {
+        List<String> chunks = new ArrayList<String>();
+        StringBuilder chunk = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                if (buffer[i] == CHUNK_SEPARATOR) {
+                    chunk.append(buffer, start, i - start);
+                    chunks.add(chunk.toString());
+                    chunk.setLength(0);
+                    start = i + 1;
+                }
+            }
+            chunk.append(buffer, start, count - start);
+        }
+        // The last chunk may not be followed by a separator.
+        if (chunk.length() > 0) {
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+
+    /**
+     * Deletes the least recently used files until the total size fits in the maximum size. Must be called while
+     * holding the lock on {@link #files}.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Long>> it = this.files.entrySet().iterator();
+        while (this.totalSize > this.maxSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            new File(this.directory, entry.getKey()).delete();
+            this.totalSize -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * @param name name of a cache file to forget.
+     */
+    private void remove(String name)
+    {
+        synchronized (this.files) {
+            Long size = this.files.remove(name);
+            if (size != null) {
+                this.totalSize -= size;
+                new File(this.directory, name).delete();
+            }
+        }
+    }
+
+    /**
+     * @param key a cache key.
+     * @return the name of the file holding the text cached for the key.
+     */
+    private String getFileName(String key)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(ENCODING));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return name.append(EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.platform.search.index.IndexCheckpoint;
+import org.xwiki.platform.search.index.IndexCheckpointStore;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Stores each checkpoint as a JSON file in the permanent directory, replaced atomically on each save.
+ * 
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultIndexCheckpointStore implements IndexCheckpointStore, Initializable
+{
+    /**
+     * Encoding of the checkpoint files.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Extension of the checkpoint files.
+     */
+    private static final String EXTENSION = ".json";
+
+    /**
+     * Logger.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * Used to get the permanent directory.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Directory holding the checkpoint files.
+     */
+    private File directory;
+
+    /**
+     * Serializes the checkpoints.
+     */
+    private final Gson gson = new Gson();
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.directory = new File(this.environment.getPermanentDirectory(), "search/checkpoints");
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            this.logger.error("Failed to create the indexing checkpoints directory [" + this.directory
+                + "], interrupted indexing jobs won't be resumed");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.IndexCheckpointStore#save(org.xwiki.platform.search.index.IndexCheckpoint)
+     */
+    @Override
+    public void save(IndexCheckpoint checkpoint)
+    {
+        File tmpFile = new File(this.directory, checkpoint.getId() + "." + Thread.currentThread().getId() + ".tmp");
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(new FileOutputStream(tmpFile), ENCODING);
+            this.gson.toJson(checkpoint, out);
+            out.close();
+            out = null;
+
+            File file = getFile(checkpoint);
+            synchronized (this) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Failed to rename [" + tmpFile + "] to [" + file + "]");
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to save the checkpoint of indexing job [" + checkpoint.getId() + "]: "
+                + e.getMessage());
+            tmpFile.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.IndexCheckpointStore#delete(org.xwiki.platform.search.index.IndexCheckpoint)
+     */
+    @Override
+    public void delete(IndexCheckpoint checkpoint)
+    {
+        synchronized (this) {
+            getFile(checkpoint).delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.IndexCheckpointStore#getCheckpoints()
+     */
+    @Override
+    public List<IndexCheckpoint> getCheckpoints()
+    {
+        List<IndexCheckpoint> checkpoints = new ArrayList<IndexCheckpoint>();
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return checkpoints;
+        }
+
+        for (File file : files) {
+            if (!file.getName().endsWith(EXTENSION)) {
+                // Leftover of an interrupted save.
+                file.delete();
+                continue;
+            }
+
+            Reader in = null;
+            try {
+                in = new InputStreamReader(new FileInputStream(file), ENCODING);
+                IndexCheckpoint checkpoint = this.gson.fromJson(in, IndexCheckpoint.class);
+                if (checkpoint != null && checkpoint.getId() != null && checkpoint.getWiki() != null) {
+                    checkpoints.add(checkpoint);
+                }
+            } catch (IOException e) {
+                this.logger.warn("Failed to read the indexing checkpoint [" + file + "]: " + e.getMessage());
+            } catch (JsonParseException e) {
+                this.logger.warn("Invalid indexing checkpoint [" + file + "], deleting it: " + e.getMessage());
+                file.delete();
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * @param checkpoint a checkpoint.
+     * @return the file holding the checkpoint.
+     */
+    private File getFile(IndexCheckpoint checkpoint)
+    {
+        return new File(this.directory, checkpoint.getId() + EXTENSION);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Commits once <code>search.indexer.commitEveryDocs</code> entries have been updated, or when the oldest pending
+ * update is older than <code>search.indexer.commitMaxDelay</code> milliseconds.
+ * 
+ * @version $Id$
+ */
+@Component
+@Named("doccount")
+@Singleton
+public class DocumentCountCommitPolicy extends AbstractCommitPolicy implements Initializable
+{
+    /**
+     * Number of updated entries triggering a commit.
+     */
+    private int maxPendingUpdates;
+
+    /**
+     * Maximum time in milliseconds an update may stay uncommitted.
+     */
+    private long maxDelay;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.maxPendingUpdates = this.configuration.getProperty("search.indexer.commitEveryDocs", 1000);
+        this.maxDelay = this.configuration.getProperty("search.indexer.commitMaxDelay", 60000L);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.internal.AbstractCommitPolicy#onUpdate(int)
+     */
+    @Override
+    public synchronized boolean onUpdate(int count)
+    {
+        super.onUpdate(count);
+
+        return this.pendingUpdates.get() >= this.maxPendingUpdates;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#isCommitDue()
+     */
+    @Override
+    public synchronized boolean isCommitDue()
+    {
+        return this.pendingUpdates.get() > 0 && System.currentTimeMillis() - this.firstPendingUpdateTime >= this.maxDelay;
+    }
+}
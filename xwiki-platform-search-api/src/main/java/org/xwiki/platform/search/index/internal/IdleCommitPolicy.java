@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Commits once no update has been sent for <code>search.indexer.commitIdleTime</code> milliseconds, so that a burst
+ * of updates results in a single commit.
+ * 
+ * @version $Id$
+ */
+@Component
+@Named("idle")
+@Singleton
+public class IdleCommitPolicy extends AbstractCommitPolicy implements Initializable
+{
+    /**
+     * Time in milliseconds without updates after which the pending updates are committed.
+     */
+    private long idleTime;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.idleTime = this.configuration.getProperty("search.indexer.commitIdleTime", 2000L);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.CommitPolicy#isCommitDue()
+     */
+    @Override
+    public synchronized boolean isCommitDue()
+    {
+        return this.pendingUpdates.get() > 0 && System.currentTimeMillis() - this.lastUpdateTime >= this.idleTime;
+    }
+}
@@ -19,9 +19,12 @@
  */
 package org.xwiki.platform.search.internal;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -29,6 +32,8 @@ import org.slf4j.Logger;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.platform.search.SearchQuery;
+import org.xwiki.platform.search.SearchQuery.Occur;
 import org.xwiki.platform.search.SearchRequest;
 
 import com.xpn.xwiki.XWikiContext;
@@ -54,6 +59,11 @@ public abstract class AbstractSearchRequest implements SearchRequest
      */
     public static final String BOOST_INDEX = "^";
 
+    /**
+     * Name of the search parameter holding the boosts of the searched fields.
+     */
+    public static final String QUERY_FIELDS = "qf";
+
     /**
      * searchParametersMap.
      */
@@ -69,6 +79,11 @@ public abstract class AbstractSearchRequest implements SearchRequest
      */
     protected String queryString;
 
+    /**
+     * Structured query, if set explicitly.
+     */
+    protected SearchQuery query;
+
     /**
      * List of languages.
      */
@@ -80,9 +95,24 @@ public abstract class AbstractSearchRequest implements SearchRequest
     protected EntityReference entityReference;
 
     /**
-     * List of fields.
+     * Whether the hits are grouped by page.
      */
-    protected List<String> fields;
+    protected boolean grouped;
+
+    /**
+     * Names of the needed search result attributes, null for all of them.
+     */
+    protected Collection<String> resultFields;
+
+    /**
+     * Name of the search profile, null for the default handler.
+     */
+    protected String profile;
+
+    /**
+     * Names of the indexed fields.
+     */
+    protected Set<String> fields;
 
     /**
      * XWikiStubContextProvider conponent.
@@ -180,6 +210,45 @@ public abstract class AbstractSearchRequest implements SearchRequest
         this.filterParametersMap = filterParametersMap;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#getQuery()
+     */
+    @Override
+    public SearchQuery getQuery()
+    {
+        if (this.query != null) {
+            return this.query;
+        }
+
+        SearchQuery searchQuery = new SearchQuery().parse(this.queryString);
+        for (Entry<String, String> filter : getFilterParametersMap().entrySet()) {
+            String field = filter.getKey();
+            Occur occur = Occur.MUST;
+            if (field.startsWith("-")) {
+                occur = Occur.MUST_NOT;
+                field = field.substring(1);
+            } else if (field.startsWith("+")) {
+                field = field.substring(1);
+            }
+            searchQuery.addFilter(occur, field, filter.getValue());
+        }
+        searchQuery.parseBoosts(getSearchParametersMap().get(QUERY_FIELDS));
+        return searchQuery;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#setQuery(org.xwiki.platform.search.SearchQuery)
+     */
+    @Override
+    public void setQuery(SearchQuery query)
+    {
+        this.query = query;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -202,6 +271,72 @@ public abstract class AbstractSearchRequest implements SearchRequest
         this.entityReference = entityReference;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#setGrouped(boolean)
+     */
+    @Override
+    public void setGrouped(boolean grouped)
+    {
+        this.grouped = grouped;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#isGrouped()
+     */
+    @Override
+    public boolean isGrouped()
+    {
+        return this.grouped;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#setResultFields(java.util.Collection)
+     */
+    @Override
+    public void setResultFields(Collection<String> resultFields)
+    {
+        this.resultFields = resultFields;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#getResultFields()
+     */
+    @Override
+    public Collection<String> getResultFields()
+    {
+        return this.resultFields;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#setProfile(java.lang.String)
+     */
+    @Override
+    public void setProfile(String profile)
+    {
+        this.profile = profile;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#getProfile()
+     */
+    @Override
+    public String getProfile()
+    {
+        return this.profile;
+    }
+
     /**
      * @return the languages
      */
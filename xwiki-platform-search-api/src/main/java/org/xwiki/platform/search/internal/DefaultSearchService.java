@@ -38,6 +38,7 @@ import org.xwiki.platform.search.Search;
 import org.xwiki.platform.search.SearchException;
 import org.xwiki.platform.search.SearchService;
 import org.xwiki.platform.search.index.SearchIndex;
+import org.xwiki.platform.search.index.SearchIndexingException;
 import org.xwiki.script.service.ScriptService;
 
 /**
@@ -144,6 +145,21 @@ public class DefaultSearchService implements ScriptService, EventListener, Searc
 
     }
 
+    /**
+     * Resumes the index builds which have a checkpoint.
+     */
+    private void resumeIndexing()
+    {
+        try {
+            int resumed = searchIndex.getBuildIndexInstance().resumeIndexing();
+            if (resumed > 0) {
+                logger.info("Resumed [" + resumed + "] interrupted index builds");
+            }
+        } catch (SearchIndexingException e) {
+            logger.error("Failed to resume the interrupted index builds", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -166,6 +182,11 @@ public class DefaultSearchService implements ScriptService, EventListener, Searc
             // Initialize search index.
             search.initialize();
 
+            // Resume the index builds interrupted by the last stop.
+            if (configuration.getProperty("search.indexer.resume", true)) {
+                resumeIndexing();
+            }
+
         } catch (IllegalArgumentException e) {
             logger.error("Unable to initialize search.Configured backend is not supported by XWiki.");
         } catch (SearchException e) {
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.xwiki.platform.search.SearchQuery.Clause;
+import org.xwiki.platform.search.SearchQuery.Occur;
+
+/**
+ * @version $Id$
+ */
+public class SearchQueryTest
+{
+    private void assertClause(Clause clause, Occur occur, String field, String value, boolean phrase)
+    {
+        Assert.assertEquals(occur, clause.getOccur());
+        Assert.assertEquals(field, clause.getField());
+        Assert.assertEquals(value, clause.getValue());
+        Assert.assertEquals(phrase, clause.isPhrase());
+    }
+
+    @Test
+    public void testParseTerms()
+    {
+        List<Clause> clauses = new SearchQuery().parse("  xwiki +solr -lucene xwiki ").getClauses();
+
+        Assert.assertEquals(4, clauses.size());
+        assertClause(clauses.get(0), Occur.SHOULD, null, "xwiki", false);
+        assertClause(clauses.get(1), Occur.MUST, null, "solr", false);
+        assertClause(clauses.get(2), Occur.MUST_NOT, null, "lucene", false);
+        assertClause(clauses.get(3), Occur.SHOULD, null, "xwiki", false);
+    }
+
+    @Test
+    public void testParsePhrases()
+    {
+        List<Clause> clauses =
+            new SearchQuery().parse("\"hello world\" -title:\"release notes\" \"unterminated phrase").getClauses();
+
+        Assert.assertEquals(3, clauses.size());
+        assertClause(clauses.get(0), Occur.SHOULD, null, "hello world", true);
+        assertClause(clauses.get(1), Occur.MUST_NOT, "title", "release notes", true);
+        assertClause(clauses.get(2), Occur.SHOULD, null, "unterminated phrase", true);
+    }
+
+    @Test
+    public void testParseFieldClauses()
+    {
+        List<Clause> clauses = new SearchQuery().parse("+space:Main author: a:b:c").getClauses();
+
+        Assert.assertEquals(3, clauses.size());
+        assertClause(clauses.get(0), Occur.MUST, "space", "Main", false);
+        assertClause(clauses.get(1), Occur.SHOULD, null, "author", false);
+        assertClause(clauses.get(2), Occur.SHOULD, "a", "b:c", false);
+    }
+
+    @Test
+    public void testParseWildcards()
+    {
+        List<Clause> clauses = new SearchQuery().parse("space:Main* te?t *").getClauses();
+
+        Assert.assertEquals(3, clauses.size());
+        assertClause(clauses.get(0), Occur.SHOULD, "space", "Main*", false);
+        assertClause(clauses.get(1), Occur.SHOULD, null, "te?t", false);
+        assertClause(clauses.get(2), Occur.SHOULD, null, "*", false);
+    }
+
+    @Test
+    public void testParseRanges()
+    {
+        List<Clause> clauses =
+            new SearchQuery().parse("+date:[* TO NOW] -creationdate:{2012-01-01T00:00:00Z TO *} [a TO b] x:[open")
+                .getClauses();
+
+        Assert.assertEquals(4, clauses.size());
+        assertClause(clauses.get(0), Occur.MUST, "date", "[* TO NOW]", false);
+        assertClause(clauses.get(1), Occur.MUST_NOT, "creationdate", "{2012-01-01T00:00:00Z TO *}", false);
+        assertClause(clauses.get(2), Occur.SHOULD, null, "[a TO b]", false);
+        // Not closed, parsed as a term.
+        assertClause(clauses.get(3), Occur.SHOULD, "x", "[open", false);
+    }
+
+    @Test
+    public void testParseNull()
+    {
+        Assert.assertTrue(new SearchQuery().parse(null).getClauses().isEmpty());
+    }
+
+    @Test
+    public void testParseBoosts()
+    {
+        SearchQuery query = new SearchQuery().parseBoosts(" title^2.5 content^x name  space^1 ");
+
+        Assert.assertEquals(2, query.getBoosts().size());
+        Assert.assertEquals(2.5f, query.getBoosts().get("title"));
+        Assert.assertEquals(1f, query.getBoosts().get("space"));
+    }
+
+    @Test
+    public void testHasField()
+    {
+        SearchQuery query = new SearchQuery().parse("title:xwiki").addFilter(Occur.MUST, "lang", "en");
+
+        Assert.assertTrue(query.hasField("title"));
+        Assert.assertTrue(query.hasField("lang"));
+        Assert.assertFalse(query.hasField("space"));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import java.util.Collection;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+/**
+ * Decides how many wiki documents are extracted together and estimates the size of the resulting Solr updates. In
+ * adaptive mode the number of documents grows while the time Solr spends per document keeps improving and shrinks
+ * when that time rises or when the heap is getting full.
+ * 
+ * @version $Id$
+ */
+public class IndexBatchSizer
+{
+    /**
+     * Estimated overhead of a field, in bytes.
+     */
+    private static final int FIELD_OVERHEAD = 32;
+
+    /**
+     * Estimated size of a non textual value, in bytes.
+     */
+    private static final int VALUE_SIZE = 16;
+
+    /**
+     * Fraction of the maximum heap above which the batches are shrunk.
+     */
+    private static final double HEAP_THRESHOLD = 0.75;
+
+    /**
+     * Relative change of the time per document below which it is considered stable.
+     */
+    private static final double TOLERANCE = 0.1;
+
+    /**
+     * Largest number of wiki documents in a batch.
+     */
+    private final int maxSize;
+
+    /**
+     * Maximum estimated size of a Solr update, in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Whether the number of documents is adapted to the Solr response times.
+     */
+    private final boolean adaptive;
+
+    /**
+     * Current number of wiki documents in a batch.
+     */
+    private int size;
+
+    /**
+     * Time per Solr document measured for the previous batch, -1 if none was measured yet.
+     */
+    private double lastTimePerDocument = -1;
+
+    /**
+     * @param size initial number of wiki documents in a batch.
+     * @param maxSize largest number of wiki documents in a batch when adaptive.
+     * @param maxBytes maximum estimated size of a Solr update, in bytes.
+     * @param adaptive whether the number of documents is adapted to the Solr response times.
+     */
+    public IndexBatchSizer(int size, int maxSize, long maxBytes, boolean adaptive)
+    {
+        this.size = Math.max(1, size);
+        this.maxSize = Math.max(this.size, maxSize);
+        this.maxBytes = maxBytes;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return the number of wiki documents to extract together.
+     */
+    public synchronized int getBatchSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the maximum estimated size of a Solr update, in bytes.
+     */
+    public long getMaxBytes()
+    {
+        return this.maxBytes;
+    }
+
+    /**
+     * Records the time Solr took to process a batch and adapts the batch size.
+     * 
+     * @param documentCount number of Solr documents of the batch.
+     * @param elapsedTime time Solr took to process the batch.
+     */
+    public synchronized void onBatchSent(int documentCount, long elapsedTime)
+    {
+        if (!this.adaptive || documentCount == 0) {
+            return;
+        }
+
+        double timePerDocument = (double) elapsedTime / documentCount;
+        if (isHeapUnderPressure()) {
+            shrink();
+        } else if (this.lastTimePerDocument >= 0) {
+            if (timePerDocument < this.lastTimePerDocument * (1 - TOLERANCE)) {
+                grow();
+            } else if (timePerDocument > this.lastTimePerDocument * (1 + TOLERANCE)) {
+                shrink();
+            }
+        } else {
+            grow();
+        }
+        this.lastTimePerDocument = timePerDocument;
+    }
+
+    /**
+     * @return true if the used heap is above the threshold.
+     */
+    protected boolean isHeapUnderPressure()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * HEAP_THRESHOLD;
+    }
+
+    /**
+     * Doubles the batch size, up to the maximum.
+     */
+    private void grow()
+    {
+        this.size = Math.min(this.maxSize, this.size * 2);
+    }
+
+    /**
+     * Halves the batch size, down to one document.
+     */
+    private void shrink()
+    {
+        this.size = Math.max(1, this.size / 2);
+    }
+
+    /**
+     * @param document a Solr input document.
+     * @return an estimation of the size of the document once sent to Solr, in bytes.
+     */
+    public static long estimateSize(SolrInputDocument document)
+    {
+        long bytes = 0;
+        for (SolrInputField field : document) {
+            bytes += FIELD_OVERHEAD + field.getName().length();
+            Object value = field.getValue();
+            if (value instanceof Collection) {
+                for (Object item : (Collection< ? >) value) {
+                    bytes += estimateValueSize(item);
+                }
+            } else {
+                bytes += estimateValueSize(value);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param value a field value.
+     * @return an estimation of the size of the value, in bytes.
+     */
+    private static long estimateValueSize(Object value)
+    {
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() * 2L;
+        }
+        return VALUE_SIZE;
+    }
+}
@@ -19,21 +19,34 @@
  */
 package org.xwiki.platform.search.index.internal;
 
-
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
+import org.xwiki.platform.search.index.DocumentData;
 import org.xwiki.platform.search.index.DocumentIndexer;
+import org.xwiki.platform.search.index.IndexCheckpoint;
+import org.xwiki.platform.search.index.IndexCheckpointStore;
 import org.xwiki.platform.search.index.SearchIndexingException;
 
 import com.xpn.xwiki.XWikiContext;
@@ -47,6 +60,51 @@ import com.xpn.xwiki.XWikiException;
 @Singleton
 public class SolrjBuildIndex extends AbstractBuildIndex
 {
+    /**
+     * Query selecting the full name, space, name, version, language and default language of the documents, completed
+     * by a restriction on their position.
+     */
+    private static final String HQL_DOCUMENTS = "select doc.fullName, doc.space, doc.name, doc.version, doc.language, "
+        + "doc.defaultLanguage from XWikiDocument as doc where";
+
+    /**
+     * Restriction of the documents query to the documents following a given full name and language.
+     */
+    private static final String HQL_AFTER_DOCUMENT = " (doc.fullName > ? or (doc.fullName = ? and doc.language > ?))";
+
+    /**
+     * Restriction of the documents query to the documents following a given page, all translations included.
+     */
+    private static final String HQL_AFTER_PAGE = " doc.fullName > ?";
+
+    /**
+     * Query counting the documents.
+     */
+    private static final String HQL_COUNT = "select count(doc.id) from XWikiDocument as doc";
+
+    /**
+     * Restriction of the queries to a space.
+     */
+    private static final String HQL_SPACE = " doc.space = ?";
+
+    /**
+     * Ordering of the documents query.
+     */
+    private static final String HQL_ORDER = " order by doc.fullName, doc.language";
+
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Holds the checkpoints of the interrupted builds.
+     */
+    @Inject
+    private IndexCheckpointStore checkpointStore;
+
     /**
      * Document indexer for solrj.
      */
@@ -54,6 +112,12 @@ public class SolrjBuildIndex extends AbstractBuildIndex
     @Named(SolrjDocumentIndexer.HINT)
     private DocumentIndexer indexer;
 
+    /**
+     * Component manager.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
     /**
      * {@inheritDoc}
      * 
@@ -85,31 +149,122 @@ public class SolrjBuildIndex extends AbstractBuildIndex
     @Override
     public int buildWikiIndex(WikiReference wikiReference) throws SearchIndexingException, XWikiException
     {
-        String wikiName = wikiReference.getName();
+        return buildWikiIndex(wikiReference, false);
+    }
 
-        final XWikiContext xcontext = getXWikiContext();
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.BuildIndex#buildWikiIndex(org.xwiki.model.reference.WikiReference,
+     *      boolean)
+     */
+    @Override
+    public int buildWikiIndex(WikiReference wikiReference, boolean delta) throws SearchIndexingException,
+        XWikiException
+    {
+        DocumentData documentData = null;
+        if (delta) {
+            try {
+                documentData = this.componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
+            } catch (ComponentLookupException e) {
+                throw new SearchIndexingException("Failed to lookup the solrj document data component", e);
+            }
+        }
 
-        String currentWikiName = xcontext.getWiki().getName();
+        int total = countDocuments(wikiReference.getName(), null);
 
-        if (!currentWikiName.equalsIgnoreCase(wikiName)) {
-            xcontext.setDatabase(wikiName);
+        IndexCheckpoint checkpoint = new IndexCheckpoint(newCheckpointId(), wikiReference.getName(), null, delta, total);
+        indexer.indexDocuments(wikiReference, new DocumentIterator(wikiReference.getName(), null, documentData, null),
+            total, checkpoint);
+
+        return total;
+    }
+
+    /**
+     * @param document a row of the documents query.
+     * @return the language of the document, the default language of the wiki document if the row is not a
+     *         translation.
+     */
+    private String getLanguage(Object[] document)
+    {
+        if (!StringUtils.isEmpty((String) document[4])) {
+            return (String) document[4];
+        } else if (!StringUtils.isEmpty((String) document[5])) {
+            return (String) document[5];
         }
+        // Multilingual and Default placeholder
+        return "en";
+    }
 
-        String hql = "select doc.space, doc.name, doc.version, doc.language from XWikiDocument as doc";
-        List<Object[]> documents = xcontext.getWiki().search(hql, xcontext);
+    /**
+     * @param versions the current version of the documents.
+     * @param documentData computes the ids of the documents in the index.
+     * @return the documents whose indexed version is not the current one, in the order of the given map.
+     */
+    private List<DocumentReference> getChangedDocuments(Map<DocumentReference, String> versions,
+        DocumentData documentData)
+    {
+        // The references hold the language so computing the ids doesn't load the documents.
+        Map<String, DocumentReference> references = new LinkedHashMap<String, DocumentReference>();
+        for (DocumentReference documentReference : versions.keySet()) {
+            references.put(documentData.getDocumentId(documentReference), documentReference);
+        }
 
-        List<DocumentReference> docsList = new ArrayList<DocumentReference>();
+        Map<String, String> indexedVersions = indexer.getIndexedVersions(new ArrayList<String>(references.keySet()));
 
-        for (Object[] document : documents) {
+        List<DocumentReference> changed = new ArrayList<DocumentReference>();
+        for (Map.Entry<String, DocumentReference> entry : references.entrySet()) {
+            String version = versions.get(entry.getValue());
+            if (version == null || !version.equals(indexedVersions.get(entry.getKey()))) {
+                changed.add(entry.getValue());
+            }
+        }
+        return changed;
+    }
 
-            String spaceName = (String) document[0];
-            DocumentReference documentReference = new DocumentReference(wikiName, spaceName, (String) document[1]);
-            docsList.add(documentReference);
+    /**
+     * @param wikiName the wiki.
+     * @param spaceName the space, null for all the spaces of the wiki.
+     * @return the number of documents (translations included) of the wiki or space.
+     * @throws XWikiException if the query fails.
+     */
+    private int countDocuments(String wikiName, String spaceName) throws XWikiException
+    {
+        String hql = HQL_COUNT;
+        List<Object> parameters = new ArrayList<Object>();
+        if (spaceName != null) {
+            hql += " where" + HQL_SPACE;
+            parameters.add(spaceName);
         }
 
-        indexer.indexDocuments(wikiReference, docsList);
+        List<Number> count = search(wikiName, hql, 0, parameters);
+
+        return count.isEmpty() || count.get(0) == null ? 0 : count.get(0).intValue();
+    }
+
+    /**
+     * Runs a query on the database of a wiki.
+     * 
+     * @param <T> the type of the rows.
+     * @param wikiName the wiki.
+     * @param hql the query.
+     * @param limit the maximum number of rows, 0 for all of them.
+     * @param parameters the values of the query parameters.
+     * @return the rows.
+     * @throws XWikiException if the query fails.
+     */
+    private <T> List<T> search(String wikiName, String hql, int limit, List<Object> parameters)
+        throws XWikiException
+    {
+        final XWikiContext xcontext = getXWikiContext();
 
-        return docsList.size();
+        String currentDatabase = xcontext.getDatabase();
+        try {
+            xcontext.setDatabase(wikiName);
+            return xcontext.getWiki().getStore().search(hql, limit, 0, parameters, xcontext);
+        } finally {
+            xcontext.setDatabase(currentDatabase);
+        }
     }
 
     /**
@@ -122,38 +277,63 @@ public class SolrjBuildIndex extends AbstractBuildIndex
     {
         logger.info("Indexing space [" + spaceReference.getName() + "]");
 
-        final XWikiContext xcontext = getXWikiContext();
-
         WikiReference wikiReference = (WikiReference) spaceReference.getParent();
 
-        String currentWikiName = xcontext.getWiki().getName();
+        int total = countDocuments(wikiReference.getName(), spaceReference.getName());
 
-        if (!currentWikiName.equalsIgnoreCase(wikiReference.getName())) {
-            xcontext.setDatabase(wikiReference.getName());
-        }
+        IndexCheckpoint checkpoint =
+            new IndexCheckpoint(newCheckpointId(), wikiReference.getName(), spaceReference.getName(), false, total);
+        // The rows come from the documents table so the documents exist, no need to check them one by one.
+        indexer.indexDocuments(spaceReference,
+            new DocumentIterator(wikiReference.getName(), spaceReference.getName(), null, null), total, checkpoint);
 
-        String hql =
-            "select doc.space, doc.name, doc.version, doc.language from XWikiDocument as doc where doc.space='"
-                + spaceReference.getName() + "'";
-        List<Object[]> documents = xcontext.getWiki().search(hql, xcontext);
+        return total;
+    }
 
-        List<DocumentReference> docsList = new ArrayList<DocumentReference>();
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.BuildIndex#resumeIndexing()
+     */
+    @Override
+    public int resumeIndexing() throws SearchIndexingException
+    {
+        List<IndexCheckpoint> checkpoints = this.checkpointStore.getCheckpoints();
+        if (checkpoints.isEmpty()) {
+            return 0;
+        }
 
-        for (Object[] document : documents) {
+        DocumentData documentData;
+        try {
+            documentData = this.componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
+        } catch (ComponentLookupException e) {
+            throw new SearchIndexingException("Failed to lookup the solrj document data component", e);
+        }
 
-            String spaceName = (String) document[0];
-            String language = (String) document[3];
+        for (IndexCheckpoint checkpoint : checkpoints) {
+            logger.info("Resuming the indexing of " + (checkpoint.getSpace() != null ? "space ["
+                + checkpoint.getSpace() + "] of " : "") + "wiki [" + checkpoint.getWiki() + "] after ["
+                + checkpoint.getIndexed() + "] of [" + checkpoint.getTotal() + "] documents");
 
-            DocumentReference documentReference =
-                new DocumentReference(wikiReference.getName(), spaceName, (String) document[1], language);
-            if (documentAccessBridge.exists(documentReference)) {
-                docsList.add(documentReference);
+            WikiReference wikiReference = new WikiReference(checkpoint.getWiki());
+            EntityReference reference = wikiReference;
+            if (checkpoint.getSpace() != null) {
+                reference = new SpaceReference(checkpoint.getSpace(), wikiReference);
             }
+            indexer.indexDocuments(reference, new DocumentIterator(checkpoint.getWiki(), checkpoint.getSpace(),
+                checkpoint.isDelta() ? documentData : null, checkpoint.getLastFullName()), checkpoint.getTotal()
+                - checkpoint.getIndexed(), checkpoint);
         }
 
-        indexer.indexDocuments(spaceReference, docsList);
+        return checkpoints.size();
+    }
 
-        return docsList.size();
+    /**
+     * @return a new identifier for the checkpoint of an indexing job.
+     */
+    private String newCheckpointId()
+    {
+        return UUID.randomUUID().toString();
     }
 
     /**
@@ -165,7 +345,165 @@ public class SolrjBuildIndex extends AbstractBuildIndex
     @Override
     public int buildAttachmentIndex(AttachmentReference attachment, DocumentModelBridge doc)
     {
-        indexer.indexAttachment(attachment, doc);
-        return 0;
+        return indexer.indexAttachment(attachment, doc) ? 1 : 0;
+    }
+
+    /**
+     * Reads the documents of a wiki or space page by page, ordered by full name and language, each page starting after
+     * the last document of the previous one, so that only one page of references is held in memory at a time. Each
+     * document and translation is read once and the translations of a page follow each other. Used from the indexer
+     * thread.
+     * 
+     * @version $Id$
+     */
+    private class DocumentIterator implements Iterator<DocumentReference>
+    {
+        /**
+         * The wiki.
+         */
+        private final String wikiName;
+
+        /**
+         * The space, null for all the spaces of the wiki.
+         */
+        private final String spaceName;
+
+        /**
+         * Computes the document ids to compare the current versions with the indexed ones, null to return all the
+         * documents.
+         */
+        private final DocumentData documentData;
+
+        /**
+         * Number of rows of a page.
+         */
+        private final int pageSize;
+
+        /**
+         * Full name of the last document read.
+         */
+        private String lastFullName;
+
+        /**
+         * Language of the last document read, empty for a document in its default language, null to read the
+         * documents following all the translations of the last page.
+         */
+        private String lastLanguage;
+
+        /**
+         * Whether all the rows have been read.
+         */
+        private boolean exhausted;
+
+        /**
+         * The documents of the current page.
+         */
+        private Iterator<DocumentReference> page = Collections.<DocumentReference> emptyList().iterator();
+
+        /**
+         * Number of documents read from the database.
+         */
+        private int checked;
+
+        /**
+         * Number of documents returned.
+         */
+        private int returned;
+
+        /**
+         * @param wikiName the wiki.
+         * @param spaceName the space, null for all the spaces of the wiki.
+         * @param documentData computes the document ids to only return the documents whose version differs from the
+         *            indexed version, null to return all the documents.
+         * @param startAfter full name of the page after which to start, null to start from the first document.
+         */
+        public DocumentIterator(String wikiName, String spaceName, DocumentData documentData, String startAfter)
+        {
+            this.wikiName = wikiName;
+            this.spaceName = spaceName;
+            this.documentData = documentData;
+            this.lastFullName = StringUtils.defaultString(startAfter);
+            this.pageSize = Math.max(1, configuration.getProperty("search.indexer.enumerationPageSize", 1000));
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!this.page.hasNext() && !this.exhausted) {
+                this.page = nextPage().iterator();
+            }
+            return this.page.hasNext();
+        }
+
+        @Override
+        public DocumentReference next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.returned++;
+            return this.page.next();
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @return the documents of the next page, possibly none in delta mode.
+         */
+        private List<DocumentReference> nextPage()
+        {
+            String hql = HQL_DOCUMENTS;
+            List<Object> parameters = new ArrayList<Object>();
+            parameters.add(this.lastFullName);
+            if (this.lastLanguage != null) {
+                hql += HQL_AFTER_DOCUMENT;
+                parameters.add(this.lastFullName);
+                parameters.add(this.lastLanguage);
+            } else {
+                hql += HQL_AFTER_PAGE;
+            }
+            if (this.spaceName != null) {
+                hql += " and" + HQL_SPACE;
+                parameters.add(this.spaceName);
+            }
+            hql += HQL_ORDER;
+
+            List<Object[]> documents;
+            try {
+                documents = search(this.wikiName, hql, this.pageSize, parameters);
+            } catch (XWikiException e) {
+                throw new RuntimeException("Failed to list the documents of wiki [" + this.wikiName + "]", e);
+            }
+
+            if (documents.size() < this.pageSize) {
+                this.exhausted = true;
+            }
+
+            Map<DocumentReference, String> versions = new LinkedHashMap<DocumentReference, String>();
+            for (Object[] document : documents) {
+                this.lastFullName = (String) document[0];
+                this.lastLanguage = StringUtils.defaultString((String) document[4]);
+                DocumentReference documentReference =
+                    new DocumentReference(this.wikiName, (String) document[1], (String) document[2],
+                        getLanguage(document));
+                versions.put(documentReference, (String) document[3]);
+            }
+            this.checked += versions.size();
+
+            if (this.documentData == null) {
+                return new ArrayList<DocumentReference>(versions.keySet());
+            }
+
+            List<DocumentReference> changed = getChangedDocuments(versions, this.documentData);
+            if (this.exhausted) {
+                logger.info("[" + (this.returned + changed.size()) + "] of the [" + this.checked
+                    + "] documents of wiki [" + this.wikiName + "] changed since they were indexed");
+            }
+            return changed;
+        }
     }
 }
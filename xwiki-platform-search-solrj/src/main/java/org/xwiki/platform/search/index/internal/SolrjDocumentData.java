@@ -25,6 +25,7 @@ import static org.xwiki.platform.search.DocumentField.COMMENT;
 import static org.xwiki.platform.search.DocumentField.CREATIONDATE;
 import static org.xwiki.platform.search.DocumentField.CREATOR;
 import static org.xwiki.platform.search.DocumentField.DATE;
+import static org.xwiki.platform.search.DocumentField.DOC_REFERENCE;
 import static org.xwiki.platform.search.DocumentField.DOCUMENT_CONTENT;
 import static org.xwiki.platform.search.DocumentField.FILENAME;
 import static org.xwiki.platform.search.DocumentField.FULLNAME;
@@ -35,6 +36,8 @@ import static org.xwiki.platform.search.DocumentField.NAME;
 import static org.xwiki.platform.search.DocumentField.OBJECT;
 import static org.xwiki.platform.search.DocumentField.OBJECT_CONTENT;
 import static org.xwiki.platform.search.DocumentField.PROPERTY_NAME;
+import static org.xwiki.platform.search.DocumentField.PROPERTY_VALUE;
+import static org.xwiki.platform.search.DocumentField.RESTRICTED;
 import static org.xwiki.platform.search.DocumentField.SPACE;
 import static org.xwiki.platform.search.DocumentField.TITLE;
 import static org.xwiki.platform.search.DocumentField.TYPE;
@@ -50,21 +53,26 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.common.SolrInputDocument;
-import org.apache.tika.Tika;
-import org.apache.tika.metadata.Metadata;
+import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.platform.search.index.ExtractionCache;
+import org.xwiki.platform.search.index.TextExtractor;
 import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
 import org.xwiki.rendering.renderer.printer.WikiPrinter;
 
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseProperty;
@@ -102,18 +110,50 @@ public class SolrjDocumentData extends AbstractDocumentData
      */
     private static final String PWD_FIELD = "password";
 
+    /**
+     * Properties which are never indexed.
+     */
+    private static final List<String> BLACKLISTED_PROPERTIES = Arrays.asList(PWD_FIELD, VALID_KEY_FIELD);
+
+    /**
+     * Space of the rights class.
+     */
+    private static final String RIGHTS_CLASS_SPACE = "XWiki";
+
+    /**
+     * Name of the class of the rights set on a document.
+     */
+    private static final String RIGHTS_CLASS_NAME = "XWikiRights";
+
+    /**
+     * Cache of the text extracted from the attachments.
+     */
+    @Inject
+    private ExtractionCache extractionCache;
+
+    /**
+     * Extracts the text of the attachments.
+     */
+    @Inject
+    private TextExtractor textExtractor;
+
+    /**
+     * Serializes the references of the pages the hits are grouped by.
+     */
+    @Inject
+    private EntityReferenceSerializer<String> defaultSerializer;
+
     /**
      * Fetch translated document.
      * 
      * @param documentReference to be translated.
+     * @param xdoc the document in its default language.
      * @return translated document
      */
-    private XWikiDocument getTranslatedDocument(DocumentReference documentReference)
+    private XWikiDocument getTranslatedDocument(DocumentReference documentReference, XWikiDocument xdoc)
     {
         XWikiDocument tdoc = null;
         try {
-            XWikiDocument xdoc = getXWikiContext().getWiki().getDocument(documentReference, getXWikiContext());
-
             String doclang = "";
             Locale locale = documentReference.getLocale();
             if (locale != null && !StringUtils.isEmpty(locale.toString())) {
@@ -127,6 +167,90 @@ public class SolrjDocumentData extends AbstractDocumentData
         return tdoc;
     }
 
+    /**
+     * @param documentReference reference to the document.
+     * @return the document in its default language.
+     * @throws XWikiException if the document can't be loaded.
+     */
+    private XWikiDocument getDocument(DocumentReference documentReference) throws XWikiException
+    {
+        return getXWikiContext().getWiki().getDocument(documentReference, getXWikiContext());
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentData#getInputDocumentSnapshot(org.xwiki.model.reference.DocumentReference)
+     */
+    @Override
+    public List<SolrInputDocument> getInputDocumentSnapshot(DocumentReference documentReference)
+    {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        try {
+            addInputDocumentSnapshot(documentReference, getDocument(documentReference), docs);
+        } catch (Exception e) {
+            logger.error("Exception during fetching input documents for " + documentReference.getName(), e);
+        }
+        return docs;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentData#getInputDocumentSnapshots(java.util.List)
+     */
+    @Override
+    public List<SolrInputDocument> getInputDocumentSnapshots(List<DocumentReference> documentReferences)
+    {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        XWikiDocument xdoc = null;
+        DocumentReference previous = null;
+        for (DocumentReference documentReference : documentReferences) {
+            try {
+                // Translations of the same page share the document in the default language.
+                if (xdoc == null || !isSamePage(previous, documentReference)) {
+                    // Reset first so that a page failing to load isn't mistaken for the previous one.
+                    xdoc = null;
+                    previous = documentReference;
+                    xdoc = getDocument(documentReference);
+                }
+                addInputDocumentSnapshot(documentReference, xdoc, docs);
+            } catch (Exception e) {
+                logger.error("Exception during fetching input documents for " + documentReference.getName(), e);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * @param documentReference reference to the document, the language of the translation to extract.
+     * @param xdoc the document in its default language.
+     * @param docs receives the Solr input documents of the document, its attachments, objects and properties.
+     */
+    private void addInputDocumentSnapshot(DocumentReference documentReference, XWikiDocument xdoc,
+        List<SolrInputDocument> docs)
+    {
+        XWikiDocument tdoc = getTranslatedDocument(documentReference, xdoc);
+        String language = getLanguage(documentReference, tdoc);
+        String documentId = getDocumentId(documentReference, language);
+
+        docs.add(getInputDocument(documentReference, xdoc, tdoc, language, documentId));
+        docs.addAll(getInputAttachments(documentReference, xdoc, language, documentId));
+        docs.addAll(getInputObjects(documentReference, xdoc, language, documentId));
+        docs.addAll(getInputProperties(documentReference, xdoc, language, documentId));
+    }
+
+    /**
+     * @param first reference to a document.
+     * @param second reference to another document.
+     * @return true if the references point to the same page, possibly in different languages.
+     */
+    static boolean isSamePage(DocumentReference first, DocumentReference second)
+    {
+        return first.getName().equals(second.getName())
+            && first.getLastSpaceReference().equals(second.getLastSpaceReference());
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -135,14 +259,33 @@ public class SolrjDocumentData extends AbstractDocumentData
     @Override
     public SolrInputDocument getInputDocument(DocumentReference documentReference)
     {
-        SolrInputDocument sdoc = new SolrInputDocument();
         try {
+            XWikiDocument xdoc = getDocument(documentReference);
+            XWikiDocument tdoc = getTranslatedDocument(documentReference, xdoc);
+            String language = getLanguage(documentReference, tdoc);
+            return getInputDocument(documentReference, xdoc, tdoc, language,
+                getDocumentId(documentReference, language));
+        } catch (Exception e) {
+            logger.error("Exception during fetching input document for " + documentReference.getName());
+        }
+        return new SolrInputDocument();
+    }
 
-            XWikiDocument tdoc = getTranslatedDocument(documentReference);
-
-            String language = getLanguage(documentReference);
-            sdoc.addField(ID, getDocumentId(documentReference));
-            addDocumentReferenceFields(documentReference, sdoc, language);
+    /**
+     * @param documentReference reference to the document.
+     * @param xdoc the document in its default language.
+     * @param tdoc the translated document.
+     * @param language language of the document.
+     * @param documentId id of the document in the index.
+     * @return Solr input document of the document.
+     */
+    private SolrInputDocument getInputDocument(DocumentReference documentReference, XWikiDocument xdoc,
+        XWikiDocument tdoc, String language, String documentId)
+    {
+        SolrInputDocument sdoc = new SolrInputDocument();
+        try {
+            sdoc.addField(ID, documentId);
+            addDocumentReferenceFields(documentReference, sdoc, language, xdoc);
             sdoc.addField(TYPE, documentReference.getType().name());
             sdoc.addField(FULLNAME + USCORE + language, serializer.serialize(documentReference));
 
@@ -167,7 +310,6 @@ public class SolrjDocumentData extends AbstractDocumentData
             if (comments != null) {
                 StringBuffer buffer = new StringBuffer();
                 for (BaseObject comment : tdoc.getComments()) {
-                    logger.info(comment.toXMLString());
                     String commentString = comment.getStringValue("comment");
                     String author = comment.getStringValue("author");
                     buffer.append(commentString + " by " + author + " ");
@@ -191,16 +333,9 @@ public class SolrjDocumentData extends AbstractDocumentData
     {
         List<SolrInputDocument> docs = Collections.EMPTY_LIST;
         try {
-            List<AttachmentReference> attachmentReferences =
-                documentAccessBridge.getAttachmentReferences(documentReference);
-            if (attachmentReferences != null) {
-                docs = new ArrayList<SolrInputDocument>();
-                for (AttachmentReference attachmentReference : attachmentReferences) {
-                    docs.add(getSolrInputAttachment(attachmentReference));
-                }
-
-            }
-
+            XWikiDocument xdoc = getDocument(documentReference);
+            String language = getLanguage(documentReference, xdoc);
+            docs = getInputAttachments(documentReference, xdoc, language, getDocumentId(documentReference, language));
         } catch (Exception e) {
             logger.error("Exception while fetching input document for " + documentReference.getName());
         }
@@ -208,24 +343,97 @@ public class SolrjDocumentData extends AbstractDocumentData
         return docs;
     }
 
+    /**
+     * @param documentReference reference to the document.
+     * @param xdoc the document in its default language.
+     * @param language language of the document.
+     * @param documentId id of the document in the index.
+     * @return Solr input documents of the attachments of the document.
+     */
+    private List<SolrInputDocument> getInputAttachments(DocumentReference documentReference, XWikiDocument xdoc,
+        String language, String documentId)
+    {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        for (XWikiAttachment attachment : xdoc.getAttachmentList()) {
+            AttachmentReference attachmentReference =
+                new AttachmentReference(attachment.getFilename(), documentReference);
+            docs.add(getSolrInputAttachment(attachmentReference, xdoc,
+                getContentAsText(attachmentReference, attachment), language, documentId));
+        }
+        return docs;
+    }
+
     /**
      * @param attachmentReference reference to Attachment.
-     * @return SolrInput Document
+     * @return SolrInput Document, null if the attachment doesn't exist.
      */
     public SolrInputDocument getSolrInputAttachment(AttachmentReference attachmentReference)
     {
-        SolrInputDocument sdoc = new SolrInputDocument();
+        List<SolrInputDocument> docs = getSolrInputAttachments(attachmentReference, null);
+        return docs.isEmpty() ? null : docs.get(0);
+    }
 
+    /**
+     * @param attachmentReference reference to Attachment.
+     * @param document the document holding the attachment if already loaded, null otherwise.
+     * @return the Solr input documents of the attachment, one for each language of the document starting with the
+     *         default one, empty if the attachment doesn't exist.
+     */
+    public List<SolrInputDocument> getSolrInputAttachments(AttachmentReference attachmentReference,
+        DocumentModelBridge document)
+    {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
         DocumentReference documentReference = attachmentReference.getDocumentReference();
+        try {
+            XWikiDocument xdoc;
+            if (document instanceof XWikiDocument) {
+                xdoc = (XWikiDocument) document;
+            } else {
+                xdoc = getDocument(documentReference);
+            }
+            XWikiAttachment attachment = xdoc.getAttachment(attachmentReference.getName());
+            if (attachment == null) {
+                return docs;
+            }
 
-        String lang = USCORE + getLanguage(documentReference);
-        sdoc.addField(ID, getAttachmentId(attachmentReference));
-        sdoc.addField(ATTACHMENT_CONTENT + lang, getContentAsText(attachmentReference));
+            // Every translation indexes its own copy of the attachment, the file is parsed only once for all.
+            List<String> contentText = getContentAsText(attachmentReference, attachment);
+            String language = getLanguage(documentReference, xdoc);
+            docs.add(getSolrInputAttachment(attachmentReference, xdoc, contentText, language,
+                getDocumentId(documentReference, language)));
+            for (String translation : xdoc.getTranslationList(getXWikiContext())) {
+                if (!StringUtils.isEmpty(translation) && !translation.equals(language)) {
+                    docs.add(getSolrInputAttachment(attachmentReference, xdoc, contentText, translation,
+                        getDocumentId(documentReference, translation)));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Exception while fetching input document for " + attachmentReference.getName());
+        }
+        return docs;
+    }
+
+    /**
+     * @param attachmentReference reference to the attachment.
+     * @param xdoc the document holding the attachment.
+     * @param contentText the chunks of text of the attachment.
+     * @param language language of the document.
+     * @param documentId id of the document in the index.
+     * @return Solr input document of the attachment.
+     */
+    private SolrInputDocument getSolrInputAttachment(AttachmentReference attachmentReference, XWikiDocument xdoc,
+        List<String> contentText, String language, String documentId)
+    {
+        SolrInputDocument sdoc = new SolrInputDocument();
+
+        String lang = USCORE + language;
+        sdoc.addField(ID, getAttachmentId(documentId, attachmentReference.getName()));
+        sdoc.addField(ATTACHMENT_CONTENT + lang, contentText);
         sdoc.addField(MIME_TYPE, getMimeType(attachmentReference));
         sdoc.addField(FILENAME + lang, attachmentReference.getName());
         sdoc.addField(FULLNAME + lang, serializer.serialize(attachmentReference));
         sdoc.addField(TYPE, attachmentReference.getType().name());
-        addDocumentReferenceFields(documentReference, sdoc, getLanguage(documentReference));
+        addDocumentReferenceFields(attachmentReference.getDocumentReference(), sdoc, language, xdoc);
 
         // XWiki Deprecated code.
 
@@ -241,36 +449,54 @@ public class SolrjDocumentData extends AbstractDocumentData
     public List<SolrInputDocument> getInputObjects(DocumentReference documentReference)
     {
         List<SolrInputDocument> inputObjects = Collections.EMPTY_LIST;
-        // Index objects
         try {
-            XWikiDocument xdoc = getXWikiContext().getWiki().getDocument(documentReference, getXWikiContext());
-            Map<DocumentReference, List<BaseObject>> map = xdoc.getXObjects();
-            inputObjects = new ArrayList<SolrInputDocument>();
-            List<String> blackListedPropeties = new ArrayList<String>(Arrays.asList(PWD_FIELD, VALID_KEY_FIELD));
-            if (map != null) {
-                for (Entry<DocumentReference, List<BaseObject>> entry : map.entrySet()) {
-                    DocumentReference docRef = entry.getKey();
-                    List<BaseObject> list = entry.getValue();
-                    for (BaseObject object : list) {
-                        SolrInputDocument sdoc = new SolrInputDocument();
-                        StringBuffer buffer = new StringBuffer();
-                        for (Object field : object.getFieldList()) {
-                            BaseProperty<EntityReference> fieldStr = (BaseProperty<EntityReference>) field;
-                            if (!blackListedPropeties.contains(fieldStr.getName())) {
-                                buffer.append(fieldStr.getName() + ":" + fieldStr.getValue() + "  ");
-                            }
+            XWikiDocument xdoc = getDocument(documentReference);
+            String language = getLanguage(documentReference, xdoc);
+            inputObjects =
+                getInputObjects(documentReference, xdoc, language, getDocumentId(documentReference, language));
+        } catch (Exception e) {
+            logger.error("Exception in retrieving the objects from document. " + documentReference.getName(), e);
+        }
+        return inputObjects;
+    }
+
+    /**
+     * @param documentReference reference to the document.
+     * @param xdoc the document in its default language.
+     * @param language language of the document.
+     * @param documentId id of the document in the index.
+     * @return Solr input documents of the objects of the document.
+     */
+    private List<SolrInputDocument> getInputObjects(DocumentReference documentReference, XWikiDocument xdoc,
+        String language, String documentId)
+    {
+        List<SolrInputDocument> inputObjects = new ArrayList<SolrInputDocument>();
+        // Index objects
+        Map<DocumentReference, List<BaseObject>> map = xdoc.getXObjects();
+        if (map != null) {
+            for (Entry<DocumentReference, List<BaseObject>> entry : map.entrySet()) {
+                DocumentReference docRef = entry.getKey();
+                List<BaseObject> list = entry.getValue();
+                for (BaseObject object : list) {
+                    if (object == null) {
+                        continue;
+                    }
+                    SolrInputDocument sdoc = new SolrInputDocument();
+                    StringBuffer buffer = new StringBuffer();
+                    for (Object field : object.getFieldList()) {
+                        BaseProperty<EntityReference> fieldStr = (BaseProperty<EntityReference>) field;
+                        if (!BLACKLISTED_PROPERTIES.contains(fieldStr.getName())) {
+                            buffer.append(fieldStr.getName() + ":" + fieldStr.getValue() + "  ");
                         }
-                        sdoc.addField(ID, getObjectId(documentReference, object));
-                        addDocumentReferenceFields(documentReference, sdoc, getLanguage(documentReference));
-                        sdoc.addField(OBJECT, docRef.getLastSpaceReference().getName() + DOT + docRef.getName());
-                        sdoc.addField(OBJECT_CONTENT + USCORE + getLanguage(documentReference), buffer.toString());
-                        sdoc.addField(TYPE, "OBJECT");
-                        inputObjects.add(sdoc);
                     }
+                    sdoc.addField(ID, getObjectId(documentId, object));
+                    addDocumentReferenceFields(documentReference, sdoc, language, xdoc);
+                    sdoc.addField(OBJECT, docRef.getLastSpaceReference().getName() + DOT + docRef.getName());
+                    sdoc.addField(OBJECT_CONTENT + USCORE + language, buffer.toString());
+                    sdoc.addField(TYPE, "OBJECT");
+                    inputObjects.add(sdoc);
                 }
             }
-        } catch (Exception e) {
-            logger.error("Exception in retrieving the objects from document. " + documentReference.getName(), e);
         }
         return inputObjects;
     }
@@ -284,37 +510,11 @@ public class SolrjDocumentData extends AbstractDocumentData
     public List<SolrInputDocument> getInputProperties(DocumentReference documentReference)
     {
         List<SolrInputDocument> inputProperties = Collections.EMPTY_LIST;
-        // Index objects
         try {
-            XWikiDocument xdoc = getXWikiContext().getWiki().getDocument(documentReference, getXWikiContext());
-            Map<DocumentReference, List<BaseObject>> map = xdoc.getXObjects();
-            inputProperties = new ArrayList<SolrInputDocument>();
-            List<String> blackListedPropeties = new ArrayList<String>(Arrays.asList(PWD_FIELD, VALID_KEY_FIELD));
-            if (map != null) {
-                for (Entry<DocumentReference, List<BaseObject>> entry : map.entrySet()) {
-                    DocumentReference docRef = entry.getKey();
-                    List<BaseObject> list = entry.getValue();
-                    for (BaseObject object : list) {
-
-                        for (Object field : object.getFieldList()) {
-                            BaseProperty<EntityReference> property = (BaseProperty<EntityReference>) field;
-                            if (!blackListedPropeties.contains(property.getName())) {
-                                SolrInputDocument sdoc = new SolrInputDocument();
-                                sdoc.addField(ID, getPropertyId(documentReference, property));
-                                String propertyName =
-                                    docRef.getLastSpaceReference().getName() + DOT + docRef.getName() + DOT
-                                        + property.getName() + USCORE + getLanguage(documentReference);
-                                sdoc.addField(PROPERTY_NAME, propertyName);
-                                sdoc.addField(propertyName, property.getValue());
-                                sdoc.addField(TYPE, "PROPERTY");
-                                addDocumentReferenceFields(documentReference, sdoc, getLanguage(documentReference));
-                                inputProperties.add(sdoc);
-                            }
-                        }
-
-                    }
-                }
-            }
+            XWikiDocument xdoc = getDocument(documentReference);
+            String language = getLanguage(documentReference, xdoc);
+            inputProperties =
+                getInputProperties(documentReference, xdoc, language, getDocumentId(documentReference, language));
         } catch (Exception e) {
             logger
                 .error(
@@ -325,24 +525,76 @@ public class SolrjDocumentData extends AbstractDocumentData
     }
 
     /**
-     * @param attachment reference to the attachment.
-     * @return the ContentText
+     * @param documentReference reference to the document.
+     * @param xdoc the document in its default language.
+     * @param language language of the document.
+     * @param documentId id of the document in the index.
+     * @return Solr input documents of the object properties of the document.
      */
-    private String getContentAsText(AttachmentReference attachment)
+    private List<SolrInputDocument> getInputProperties(DocumentReference documentReference, XWikiDocument xdoc,
+        String language, String documentId)
     {
-        String contentText = null;
-
-        try {
-            Tika tika = new Tika();
+        List<SolrInputDocument> inputProperties = new ArrayList<SolrInputDocument>();
+        Map<DocumentReference, List<BaseObject>> map = xdoc.getXObjects();
+        if (map != null) {
+            for (Entry<DocumentReference, List<BaseObject>> entry : map.entrySet()) {
+                DocumentReference docRef = entry.getKey();
+                List<BaseObject> list = entry.getValue();
+                for (BaseObject object : list) {
+                    if (object == null) {
+                        continue;
+                    }
+                    for (Object field : object.getFieldList()) {
+                        BaseProperty<EntityReference> property = (BaseProperty<EntityReference>) field;
+                        if (!BLACKLISTED_PROPERTIES.contains(property.getName())) {
+                            SolrInputDocument sdoc = new SolrInputDocument();
+                            sdoc.addField(ID, getPropertyId(documentId, property));
+                            String propertyName =
+                                docRef.getLastSpaceReference().getName() + DOT + docRef.getName() + DOT
+                                    + property.getName() + USCORE + language;
+                            sdoc.addField(PROPERTY_NAME, propertyName);
+                            sdoc.addField(propertyName, property.getValue());
+                            sdoc.addField(PROPERTY_VALUE, property.getValue());
+                            sdoc.addField(TYPE, "PROPERTY");
+                            addDocumentReferenceFields(documentReference, sdoc, language, xdoc);
+                            inputProperties.add(sdoc);
+                        }
+                    }
+                }
+            }
+        }
+        return inputProperties;
+    }
 
-            Metadata metadata = new Metadata();
-            metadata.set(Metadata.RESOURCE_NAME_KEY, attachment.getName());
+    /**
+     * @param attachmentReference reference to the attachment.
+     * @param attachment the attachment.
+     * @return the chunks of text of the attachment, null if it can't be extracted.
+     */
+    private List<String> getContentAsText(AttachmentReference attachmentReference, XWikiAttachment attachment)
+    {
+        if (attachment == null) {
+            return null;
+        }
 
-            InputStream in = documentAccessBridge.getAttachmentContent(attachment);
+        String cacheKey =
+            attachmentReference + "#" + attachment.getVersion() + "#" + attachment.getFilesize() + "#"
+                + attachment.getDate().getTime();
+        List<String> contentText = this.extractionCache.get(cacheKey);
+        if (contentText != null) {
+            return contentText;
+        }
 
-            contentText = StringUtils.lowerCase(tika.parseToString(in, metadata));
-        } catch (Throwable ex) {
-            logger.error("Exception while retrieving attachment content for document " + attachment.getName());
+        // The text isn't lowercased, the analyzers of the content fields take care of it.
+        try {
+            InputStream in = attachment.getContentInputStream(getXWikiContext());
+            contentText = this.textExtractor.extract(attachmentReference.getName(), in, attachment.getFilesize());
+            if (contentText != null) {
+                this.extractionCache.put(cacheKey, contentText);
+            }
+        } catch (Exception ex) {
+            logger.error("Exception while retrieving attachment content for document "
+                + attachmentReference.getName());
         }
 
         return contentText;
@@ -352,15 +604,41 @@ public class SolrjDocumentData extends AbstractDocumentData
      * @param documentReference reference to document.
      * @param sdoc SOlr Input Document.
      * @param lang language of the document.
+     * @param xdoc the document in its default language.
      */
-    private void addDocumentReferenceFields(DocumentReference documentReference, SolrInputDocument sdoc, String lang)
+    private void addDocumentReferenceFields(DocumentReference documentReference, SolrInputDocument sdoc, String lang,
+        XWikiDocument xdoc)
     {
 
-        logger.info("Language of the document [" + documentReference.getName() + "] is [" + lang + "]");
         sdoc.addField(NAME + USCORE + lang, documentReference.getName());
         sdoc.addField(WIKI, documentReference.getWikiReference().getName());
         sdoc.addField(SPACE, documentReference.getLastSpaceReference().getName());
+        sdoc.addField(DOC_REFERENCE, defaultSerializer.serialize(documentReference));
         sdoc.addField(LANGUAGE, lang);
+        sdoc.addField(RESTRICTED, isRestricted(xdoc));
+    }
+
+    /**
+     * Rights set on the wiki and on the spaces are filtered at query time, only the rights set on the document itself
+     * require checking each hit.
+     * 
+     * @param xdoc the document in its default language.
+     * @return true if the document holds rights objects.
+     */
+    private boolean isRestricted(XWikiDocument xdoc)
+    {
+        DocumentReference rightsClass =
+            new DocumentReference(xdoc.getDocumentReference().getWikiReference().getName(), RIGHTS_CLASS_SPACE,
+                RIGHTS_CLASS_NAME);
+        List<BaseObject> rights = xdoc.getXObjects(rightsClass);
+        if (rights != null) {
+            for (BaseObject right : rights) {
+                if (right != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -19,25 +19,50 @@
  */
 package org.xwiki.platform.search.index.internal;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
-import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
 import org.xwiki.model.EntityType;
@@ -45,19 +70,30 @@ import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.platform.search.DocumentField;
+import org.xwiki.platform.search.SearchEngine;
+import org.xwiki.platform.search.index.CommitPolicy;
 import org.xwiki.platform.search.index.DocumentData;
 import org.xwiki.platform.search.index.DocumentIndexer;
 import org.xwiki.platform.search.index.DocumentIndexerStatus;
+import org.xwiki.platform.search.index.IndexCheckpoint;
+import org.xwiki.platform.search.index.IndexCheckpointStore;
+import org.xwiki.platform.search.index.SearchIndexingException;
 import org.xwiki.platform.search.internal.DocumentHelper;
+import org.xwiki.platform.search.internal.SolrjSearchEngine;
 import org.xwiki.rendering.renderer.BlockRenderer;
 
 /**
+ * Indexes documents into Solr. Bulk indexing requests are processed as jobs: documents are loaded and rendered in
+ * parallel by a bounded pool of extractor threads and the resulting batches are sent to Solr by a single writer thread.
+ * Jobs commit once when they are done, the commits of the other updates are driven by the configured
+ * {@link CommitPolicy}.
+ * 
  * @version $Id$
  */
 @Component
 @Named(SolrjDocumentIndexer.HINT)
 @Singleton
-public class SolrjDocumentIndexer extends DocumentHelper implements DocumentIndexer
+public class SolrjDocumentIndexer extends DocumentHelper implements DocumentIndexer, Initializable, Disposable
 {
     /**
      * solrjindexer HINT.
@@ -69,6 +105,16 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
      */
     private static final String USCORE = "_";
 
+    /**
+     * Prefix of the names of the threads created by the indexer.
+     */
+    private static final String THREAD_PREFIX = "SolrjIndexer";
+
+    /**
+     * Number of ids looked up in a single query, kept below the Solr maximum number of boolean clauses.
+     */
+    private static final int VERSION_LOOKUP_SIZE = 500;
+
     /**
      * Logger component.
      */
@@ -76,64 +122,682 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     private Logger logger;
 
     /**
-     * Thread object reference variable.
+     * solrServer Object Reference Variable.
      */
-    private Thread thread;
+    private SolrServer solrServer;
 
     /**
-     * solrServer Object Reference Variable.
+     * SearchEngine component, selected by {@link SolrjSearchEngine#ENGINE_KEY}.
      */
-    private SolrServer solrServer;
+    private SearchEngine searchEngine;
+
+    /**
+     * The rebuild in progress, null if there is none.
+     */
+    private volatile Rebuild rebuild;
+
+    /**
+     * BlockRenderer Component.
+     */
+    @Inject
+    @Named("plain/1.0")
+    private BlockRenderer renderer;
+
+    /**
+     * ComponentManager component.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * DocumentAccessBridge component.
+     */
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Persists the checkpoints of the resumable jobs.
+     */
+    @Inject
+    private IndexCheckpointStore checkpointStore;
+
+    /**
+     * indexerStatusMap to store Indexer status.
+     */
+    private Map<String, AbstractDocumentIndexerStatus> indexerStatusMap = Collections
+        .synchronizedMap(new HashMap<String, AbstractDocumentIndexerStatus>());
+
+    /**
+     * Runs the bulk indexing jobs, bounding the number of jobs processed at the same time.
+     */
+    private ExecutorService jobExecutor;
+
+    /**
+     * Loads and renders the documents of the bulk indexing jobs in parallel.
+     */
+    private ThreadPoolExecutor extractorExecutor;
+
+    /**
+     * Maximum number of extractors working on the same job.
+     */
+    private int threadsPerJob;
+
+    /**
+     * Minimum time between two checkpoints of a job, in milliseconds. Each checkpoint commits the index.
+     */
+    private long checkpointInterval;
+
+    /**
+     * Extracted batches waiting to be sent to Solr. Bounded so that the extractors block when the writer falls behind.
+     */
+    private BlockingQueue<IndexBatch> writeQueue;
+
+    /**
+     * Single thread sending the extracted batches to Solr.
+     */
+    private Thread writerThread;
+
+    /**
+     * Decides when the updates which are not part of a job are committed.
+     */
+    private CommitPolicy commitPolicy;
+
+    /**
+     * Periodically asks the commit policy whether a commit is due.
+     */
+    private ScheduledExecutorService commitScheduler;
+
+    /**
+     * Decides how many documents are extracted together and bounds the size of the updates sent to Solr.
+     */
+    private IndexBatchSizer batchSizer;
+
+    /**
+     * Number of batches or commits which failed. A job doesn't move its checkpoint once it changed, since some of its
+     * documents may be lost, e.g. when the search engine sends the updates asynchronously and only reports their
+     * failures on commit.
+     */
+    private final AtomicInteger updateFailures = new AtomicInteger();
+
+    /**
+     * A rebuild of the entire index into the rebuild core.
+     * 
+     * @version $Id$
+     */
+    private static class Rebuild
+    {
+        /**
+         * Server of the rebuild core.
+         */
+        private final SolrServer server;
+
+        /**
+         * Thread scheduling the rebuild jobs.
+         */
+        private final Thread owner = Thread.currentThread();
+
+        /**
+         * Number of rebuild jobs not done yet.
+         */
+        private final AtomicInteger pendingJobs = new AtomicInteger();
+
+        /**
+         * Whether all the rebuild jobs have been scheduled.
+         */
+        private volatile boolean scheduled;
+
+        /**
+         * Whether the cores have to be swapped once the rebuild jobs are done.
+         */
+        private volatile boolean swap;
+
+        /**
+         * Whether a rebuild job failed to list or write its documents, in which case the rebuilt index is incomplete
+         * and must not be swapped in.
+         */
+        private volatile boolean failed;
+
+        /**
+         * @param server server of the rebuild core.
+         */
+        Rebuild(SolrServer server)
+        {
+            this.server = server;
+        }
+    }
+
+    /**
+     * Creates the daemon, low priority threads used by the indexer.
+     * 
+     * @version $Id$
+     */
+    private static class IndexerThreadFactory implements ThreadFactory
+    {
+        /**
+         * Prefix of the thread names.
+         */
+        private final String name;
+
+        /**
+         * Number of threads created so far.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * @param name prefix of the thread names.
+         */
+        public IndexerThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, this.name + "-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+
+    /**
+     * Runs the rejected extractions in the submitting thread while the pool is live, so that the jobs wait for the
+     * extractors, and rejects them once the pool is shut down so that the jobs can give up their documents.
+     * 
+     * @version $Id$
+     */
+    private static class CallerRunsUnlessShutdownPolicy implements RejectedExecutionHandler
+    {
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable,
+         *      java.util.concurrent.ThreadPoolExecutor)
+         */
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+        {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The extractor pool is shut down");
+            }
+            runnable.run();
+        }
+    }
+
+    /**
+     * Solr input documents extracted from a sublist of the documents of a job.
+     * 
+     * @version $Id$
+     */
+    private static class IndexBatch
+    {
+        /**
+         * The job the batch belongs to.
+         */
+        private final IndexJob job;
+
+        /**
+         * The extraction the batch comes from.
+         */
+        private final ExtractTask task;
+
+        /**
+         * Solr input documents to be sent.
+         */
+        private final List<SolrInputDocument> documents;
+
+        /**
+         * Number of wiki documents the batch was extracted from.
+         */
+        private final int referenceCount;
+
+        /**
+         * Time spent loading and rendering the wiki documents.
+         */
+        private final long fetchTime;
+
+        /**
+         * @param task the extraction the batch comes from.
+         * @param documents Solr input documents to be sent.
+         * @param referenceCount number of wiki documents the batch was extracted from.
+         * @param fetchTime time spent loading and rendering the wiki documents.
+         */
+        public IndexBatch(ExtractTask task, List<SolrInputDocument> documents, int referenceCount, long fetchTime)
+        {
+            this.job = task.job;
+            this.task = task;
+            this.documents = documents;
+            this.referenceCount = referenceCount;
+            this.fetchTime = fetchTime;
+        }
+    }
+
+    /**
+     * Bulk indexing job: splits the documents to index in batches and hands them over to the extractors. The documents
+     * are read from an iterator as the extractors get free, so they don't have to be all known beforehand.
+     * 
+     * @version $Id$
+     */
+    private class IndexJob implements Runnable
+    {
+        /**
+         * The documents to index.
+         */
+        private Iterator<DocumentReference> docs;
+
+        /**
+         * Number of documents to index, or an estimate of it.
+         */
+        private int total;
+
+        /**
+         * Entity Reference.
+         */
+        private EntityReference entityReference;
+
+        /**
+         * Name of the job, used as key of its status.
+         */
+        private final String name;
+
+        /**
+         * Status of the job.
+         */
+        private final AbstractDocumentIndexerStatus indexerStatus = new SolrjDocumentIndexerStatus();
+
+        /**
+         * One permit for each document of the job which has been sent to Solr.
+         */
+        private final Semaphore processed = new Semaphore(0);
+
+        /**
+         * Limits the number of extractors working on the job so that concurrent jobs, e.g. the wikis of a farm
+         * rebuild, all make progress.
+         */
+        private final Semaphore extractors = new Semaphore(threadsPerJob);
+
+        /**
+         * The rebuild the job is part of, null if it updates the live index.
+         */
+        private final Rebuild jobRebuild;
+
+        /**
+         * Total time spent indexing.
+         */
+        private long totalTime;
+
+        /**
+         * The checkpoint of the job, null if the job is not resumable. Rebuilds are not resumable since the rebuild
+         * core is not swapped in after a restart.
+         */
+        private final IndexCheckpoint checkpoint;
+
+        /**
+         * Number of documents indexed before the job was resumed.
+         */
+        private final int resumedCount;
+
+        /**
+         * The extractions scheduled and not fully written yet, in the order of the documents. Guarded by the job.
+         */
+        private final LinkedList<ExtractTask> inFlight = new LinkedList<ExtractTask>();
+
+        /**
+         * Last document of the last extraction such that all the documents up to it are written. Guarded by the job.
+         */
+        private DocumentReference lastWritten;
+
+        /**
+         * Number of documents up to {@link #lastWritten}. Guarded by the job.
+         */
+        private int writtenCount;
+
+        /**
+         * When the checkpoint was last saved. Guarded by the job.
+         */
+        private long checkpointTime = System.currentTimeMillis();
+
+        /**
+         * Number of documents covered by the saved checkpoint. Guarded by the checkpoint.
+         */
+        private int checkpointCount;
+
+        /**
+         * Set when documents are skipped because the indexer shuts down: the checkpoint must stay before them.
+         */
+        private volatile boolean interrupted;
+
+        /**
+         * Number of update failures when the job started.
+         */
+        private final int startUpdateFailures = updateFailures.get();
+
+        /**
+         * @param entityReference refernce to Document ,atatchment.
+         * @param docs the documents to index.
+         * @param total number of documents to index, or an estimate of it.
+         * @param checkpoint the checkpoint of the job, null if the job is not resumable.
+         */
+        public IndexJob(EntityReference entityReference, Iterator<DocumentReference> docs, int total,
+            IndexCheckpoint checkpoint)
+        {
+            this.docs = docs;
+            this.total = total;
+            this.entityReference = entityReference;
+            this.name = THREAD_PREFIX + "[" + hashCode() + "]";
+
+            Rebuild currentRebuild = rebuild;
+            if (currentRebuild != null && !currentRebuild.scheduled && currentRebuild.owner == Thread.currentThread()) {
+                this.jobRebuild = currentRebuild;
+                this.jobRebuild.pendingJobs.incrementAndGet();
+            } else {
+                this.jobRebuild = null;
+            }
+
+            if (checkpoint != null && this.jobRebuild == null) {
+                this.checkpoint = checkpoint;
+                this.resumedCount = checkpoint.getIndexed();
+                // Saved right away so that a job still queued when the wiki stops is resumed too.
+                checkpointStore.save(checkpoint);
+            } else {
+                this.checkpoint = null;
+                this.resumedCount = 0;
+            }
+
+            // Report queued jobs too.
+            this.indexerStatus.setTotalDocCount(total);
+            this.indexerStatus.setTitle(this.name);
+            if (entityReference != null) {
+                this.indexerStatus.setEntityName(entityReference.getName());
+                this.indexerStatus.setEntityType(entityReference.getType().toString());
+            }
+            indexerStatusMap.put(this.name, this.indexerStatus);
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run()
+        {
+            logger.info("Indexing a total of [" + this.total + "] documents");
+
+            // The documents may be read from the database while iterating.
+            ExecutionContext context = new ExecutionContext();
+            try {
+                executionContextManager.initialize(context);
+            } catch (ExecutionContextException e) {
+                logger.error("Failed to initialize Solrj indexer execution context", e);
+            }
+            execution.pushContext(context);
+
+            try {
+                int scheduled = 0;
+                boolean enumerated = false;
+                try {
+                    // First document of the next batch, read while completing the current one.
+                    DocumentReference next = null;
+                    while (next != null || this.docs.hasNext()) {
+                        int batchSize = batchSizer.getBatchSize();
+                        List<DocumentReference> subList = new ArrayList<DocumentReference>(batchSize);
+                        if (next != null) {
+                            subList.add(next);
+                            next = null;
+                        }
+                        while (next == null && this.docs.hasNext()) {
+                            DocumentReference reference = this.docs.next();
+                            // Don't split the translations of a page over several batches.
+                            if (subList.size() >= batchSize
+                                && !SolrjDocumentData.isSamePage(subList.get(subList.size() - 1), reference)) {
+                                next = reference;
+                            } else {
+                                subList.add(reference);
+                            }
+                        }
+                        scheduled += subList.size();
+                        ExtractTask task = new ExtractTask(this, subList);
+                        synchronized (this) {
+                            this.inFlight.add(task);
+                        }
+                        this.extractors.acquire();
+                        try {
+                            // Blocks (by running the extraction in this thread) when all the extractors are busy.
+                            extractorExecutor.execute(task);
+                        } catch (RejectedExecutionException e) {
+                            logger.error("Indexer is shutting down, skipping [" + subList.size() + "] documents");
+                            this.interrupted = true;
+                            failRebuild();
+                            this.extractors.release();
+                            done(task, subList.size());
+                        }
+                    }
+                    enumerated = true;
+                } catch (RuntimeException e) {
+                    logger.error("Failed to list the documents of indexing job [" + this.name + "]", e);
+                    failRebuild();
+                }
+
+                this.processed.acquire(scheduled);
+
+                // The rebuild core is committed when it is swapped.
+                if (this.jobRebuild == null) {
+                    long startTime = System.currentTimeMillis();
+                    commit();
+                    this.totalTime += System.currentTimeMillis() - startTime;
+                }
+
+                // Keep the checkpoint of an incomplete job so that it is resumed on the next start.
+                if (this.checkpoint != null && enumerated && !this.interrupted && !hasFailedUpdates()) {
+                    checkpointStore.delete(this.checkpoint);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Indexing job [" + this.name + "] was interrupted");
+                failRebuild();
+            } catch (Exception e) {
+                logger.error("Error commiting solr index updates", e);
+                failRebuild();
+            } finally {
+                execution.removeContext();
+                indexerStatusMap.remove(this.name);
+                if (this.jobRebuild != null) {
+                    this.jobRebuild.pendingJobs.decrementAndGet();
+                    finishRebuild(this.jobRebuild);
+                }
+            }
+
+            logger.info("Total time taken to index [" + this.indexerStatus.getTotalDocCount() + "] documents is "
+                + this.totalTime);
+        }
+
+        /**
+         * Sends a batch to Solr. Called by the writer thread.
+         * 
+         * @param batch the batch to send.
+         */
+        private void write(IndexBatch batch)
+        {
+            try {
+                long elapsedTime = batch.fetchTime;
+                if (!batch.documents.isEmpty()) {
+                    // Measured here since a queue-backed server answers before Solr processed the documents, it
+                    // then blocks the writer once its queue is full.
+                    long sendTime = System.currentTimeMillis();
+                    if (this.jobRebuild != null) {
+                        this.jobRebuild.server.add(batch.documents);
+                    } else {
+                        solrServer.add(batch.documents);
+                    }
+                    sendTime = System.currentTimeMillis() - sendTime;
+                    if (this.jobRebuild == null) {
+                        Rebuild currentRebuild = rebuild;
+                        if (currentRebuild != null) {
+                            currentRebuild.server.add(batch.documents);
+                        }
+                    }
+                    batchSizer.onBatchSent(batch.documents.size(), sendTime);
+                    elapsedTime += sendTime;
+                    removeContentFields(batch.documents);
+                }
+
+                // Send out a notification
+                this.indexerStatus.addStepDetails(elapsedTime, batch.referenceCount, batch.documents);
+                this.totalTime += elapsedTime;
+            } catch (Exception e) {
+                logger.error("Error sending solr index updates", e);
+                updateFailures.incrementAndGet();
+                failRebuild();
+            } finally {
+                done(batch.task, batch.referenceCount);
+            }
+        }
+
+        /**
+         * Marks the rebuild the job belongs to as failed, so that the incomplete rebuilt index is not swapped in.
+         */
+        private void failRebuild()
+        {
+            if (this.jobRebuild != null) {
+                this.jobRebuild.failed = true;
+            }
+        }
+
+        /**
+         * @return true if updates failed since the job started, some of its documents being possibly lost.
+         */
+        private boolean hasFailedUpdates()
+        {
+            return updateFailures.get() != this.startUpdateFailures;
+        }
+
+        /**
+         * @param task the extraction the documents come from.
+         * @param count number of documents of the job which have been processed.
+         */
+        private void done(ExtractTask task, int count)
+        {
+            DocumentReference position = null;
+            int written = 0;
+            synchronized (this) {
+                task.remaining -= count;
+                while (!this.inFlight.isEmpty() && this.inFlight.getFirst().remaining == 0) {
+                    List<DocumentReference> references = this.inFlight.removeFirst().references;
+                    this.lastWritten = references.get(references.size() - 1);
+                    this.writtenCount += references.size();
+                }
+                long now = System.currentTimeMillis();
+                if (this.checkpoint != null && this.lastWritten != null
+                    && now - this.checkpointTime >= checkpointInterval) {
+                    this.checkpointTime = now;
+                    position = this.lastWritten;
+                    written = this.writtenCount;
+                }
+            }
+
+            try {
+                if (position != null) {
+                    saveCheckpoint(position, written);
+                }
+            } finally {
+                this.processed.release(count);
+            }
+        }
+
+        /**
+         * Commits the documents written so far and moves the checkpoint after them.
+         * 
+         * @param position the last document written, all the documents before it being written too.
+         * @param written number of documents of the job up to the position.
+         */
+        private void saveCheckpoint(DocumentReference position, int written)
+        {
+            synchronized (this.checkpoint) {
+                if (this.interrupted || written <= this.checkpointCount || hasFailedUpdates()) {
+                    return;
+                }
+                try {
+                    // Only the committed documents can be skipped when resuming.
+                    commit();
+                    if (hasFailedUpdates()) {
+                        return;
+                    }
+                    this.checkpoint.setPosition(position, this.resumedCount + written);
+                    checkpointStore.save(this.checkpoint);
+                    this.checkpointCount = written;
+                } catch (Exception e) {
+                    logger.warn("Failed to save the checkpoint of indexing job [" + this.name + "]: "
+                        + e.getMessage());
+                }
+            }
+        }
+    }
 
     /**
-     * BlockRenderer Component.
+     * Loads and renders a sublist of the documents of a job and queues the result for the writer.
+     * 
+     * @version $Id$
      */
-    @Inject
-    @Named("plain/1.0")
-    private BlockRenderer renderer;
+    private class ExtractTask implements Runnable
+    {
+        /**
+         * The job the documents belong to.
+         */
+        private final IndexJob job;
 
-    /**
-     * ComponentManager component.
-     */
-    @Inject
-    private ComponentManager componentManager;
+        /**
+         * The documents to extract.
+         */
+        private final List<DocumentReference> references;
 
-    /**
-     * DocumentAccessBridge component.
-     */
-    @Inject
-    private DocumentAccessBridge documentAccessBridge;
+        /**
+         * Solr input documents extracted and not handed over to the writer yet.
+         */
+        private List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
 
-    /**
-     * indexerStatusMap to store Indexer status.
-     */
-    private Map<String, AbstractDocumentIndexerStatus> indexerStatusMap = Collections
-        .synchronizedMap(new HashMap<String, AbstractDocumentIndexerStatus>());
+        /**
+         * Estimated size of the current batch, in bytes.
+         */
+        private long bytes;
 
-    /**
-     * @version $Id$
-     */
-    private class IndexThread implements Runnable
-    {
+        /**
+         * Number of wiki documents handed over to the writer so far.
+         */
+        private int flushed;
 
         /**
-         * list of Document Reference.
+         * Start time of the extraction of the current batch.
          */
-        private List<DocumentReference> docList;
+        private long startTime;
 
         /**
-         * Entity Reference.
+         * Number of wiki documents not written to Solr yet. Guarded by the job.
          */
-        private EntityReference entityReference;
+        private int remaining;
 
         /**
-         * @param entityReference refernce to Document ,atatchment.
-         * @param docList list of document reference.
+         * @param job the job the documents belong to.
+         * @param references the documents to extract.
          */
-        public IndexThread(EntityReference entityReference, List<DocumentReference> docList)
+        public ExtractTask(IndexJob job, List<DocumentReference> references)
         {
-            this.docList = docList;
-            this.entityReference = entityReference;
+            this.job = job;
+            this.references = references;
+            this.remaining = references.size();
         }
 
         /**
@@ -145,107 +809,280 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
         public void run()
         {
             ExecutionContext context = new ExecutionContext();
-            // Create a SolrDocData object
-            AbstractDocumentIndexerStatus indexerStatus = new SolrjDocumentIndexerStatus();
-            indexerStatusMap.put(Thread.currentThread().getName(), indexerStatus);
-
-            indexerStatus.setTotalDocCount(docList.size());
-            indexerStatus.setTitle(Thread.currentThread().getName());
-            indexerStatus.setEntityName(entityReference.getName());
-            indexerStatus.setEntityType(entityReference.getType().toString());
-
-            logger.info("Indexing a total of [" + docList.size() + "] documents testing");
-
             try {
                 executionContextManager.initialize(context);
             } catch (ExecutionContextException e) {
-                throw new RuntimeException("Failed to initialize Solrj indexer execution context", e);
+                logger.error("Failed to initialize Solrj indexer execution context", e);
+                this.job.done(this, this.references.size());
+                this.job.extractors.release();
+                return;
             }
 
             execution.pushContext(context);
 
-            long totalTime = 0;
-
+            this.startTime = System.currentTimeMillis();
+            int extracted = 0;
             try {
-                for (int i = 0; i < docList.size(); i += 10) {
-                    int start = i;
-                    int end = (i + 10) < docList.size() ? (i + 10) : (docList.size());
-                    List<DocumentReference> subList = docList.subList(start, end);
-                    List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
-                    long startTime;
-                    long endTime;
-                    long fetchTime = 0;
-                    for (DocumentReference docRef : subList) {
+                SolrjDocumentData sdocdata = componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
+                int i = 0;
+                while (i < this.references.size()) {
+                    // The translations of a page are extracted together so that the page is loaded once.
+                    int end = i + 1;
+                    while (end < this.references.size()
+                        && SolrjDocumentData.isSamePage(this.references.get(i), this.references.get(end))) {
+                        end++;
+                    }
+                    List<DocumentReference> translations = this.references.subList(i, end);
+                    try {
+                        // Document, attachments, objects and properties
+                        addAll(sdocdata.getInputDocumentSnapshots(translations), extracted);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        logger.error("Error fetching document [" + this.references.get(i).getName() + "]", e);
+                    }
+                    extracted += translations.size();
+                    i = end;
+                }
 
-                        try {
-                            startTime = new Date().getTime();
+                flush(extracted);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.job.interrupted = true;
+                this.job.done(this, this.references.size() - this.flushed);
+            } catch (Exception e) {
+                logger.error("Error looking up the solrj document data component", e);
+                this.job.done(this, this.references.size() - this.flushed);
+            } finally {
+                execution.removeContext();
+                this.job.extractors.release();
+            }
+        }
+
+        /**
+         * @param docs the Solr input documents of some entities, may be null.
+         * @param extracted number of wiki documents fully extracted so far.
+         * @throws InterruptedException if interrupted while waiting for the writer.
+         */
+        private void addAll(List<SolrInputDocument> docs, int extracted) throws InterruptedException
+        {
+            if (docs != null) {
+                for (SolrInputDocument doc : docs) {
+                    add(doc, extracted);
+                }
+            }
+        }
+
+        /**
+         * Adds a Solr input document to the current batch, handing the batch over to the writer when it gets too big.
+         * 
+         * @param doc a Solr input document, may be null.
+         * @param extracted number of wiki documents fully extracted so far.
+         * @throws InterruptedException if interrupted while waiting for the writer.
+         */
+        private void add(SolrInputDocument doc, int extracted) throws InterruptedException
+        {
+            if (doc != null) {
+                this.docs.add(doc);
+                this.bytes += IndexBatchSizer.estimateSize(doc);
+                if (this.bytes >= batchSizer.getMaxBytes()) {
+                    flush(extracted);
+                }
+            }
+        }
+
+        /**
+         * Hands the current batch over to the writer.
+         * 
+         * @param extracted number of wiki documents fully extracted so far.
+         * @throws InterruptedException if interrupted while waiting for the writer.
+         */
+        private void flush(int extracted) throws InterruptedException
+        {
+            long now = System.currentTimeMillis();
+            writeQueue.put(new IndexBatch(this, this.docs, extracted - this.flushed, now - this.startTime));
+            this.flushed = extracted;
+            this.startTime = now;
+            this.docs = new ArrayList<SolrInputDocument>();
+            this.bytes = 0;
+        }
+    }
 
-                            endTime = new Date().getTime();
-                            fetchTime += (endTime - startTime);
+    /**
+     * Sends the batches queued by the extractors to Solr, one at a time.
+     * 
+     * @version $Id$
+     */
+    private class IndexWriter implements Runnable
+    {
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run()
+        {
+            while (!Thread.currentThread().isInterrupted()) {
+                IndexBatch batch;
+                try {
+                    batch = writeQueue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    continue;
+                }
+                try {
+                    batch.job.write(batch);
+                } catch (Throwable e) {
+                    // The writer must survive, the jobs would wait forever for their batches otherwise.
+                    logger.error("Unexpected error writing a batch of indexing job [" + batch.job.name + "]", e);
+                    updateFailures.incrementAndGet();
+                    batch.job.failRebuild();
+                }
+            }
+        }
+    }
 
-                            SolrjDocumentData sdocdata =
-                                componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        String engine = this.configuration.getProperty(SolrjSearchEngine.ENGINE_KEY, SolrjSearchEngine.HINT);
+        try {
+            this.searchEngine = this.componentManager.getInstance(SearchEngine.class, engine);
+        } catch (ComponentLookupException e) {
+            throw new InitializationException("Failed to lookup the [" + engine + "] search engine", e);
+        }
 
-                            // Document
-                            SolrInputDocument sdoc = sdocdata.getInputDocument(docRef);
-                            docs.add(sdoc);
+        int threads =
+            this.configuration.getProperty("search.indexer.threads", Runtime.getRuntime().availableProcessors());
+        int queueSize = this.configuration.getProperty("search.indexer.queueSize", threads * 2);
+        int maxJobs = this.configuration.getProperty("search.indexer.maxJobs", 2);
+        int batchSize = this.configuration.getProperty("search.indexer.batchSize", 10);
+        this.threadsPerJob = this.configuration.getProperty("search.indexer.threadsPerJob", threads);
+        this.checkpointInterval = this.configuration.getProperty("search.indexer.checkpointInterval", 300000L);
 
-                            // Attachments
-                            List<SolrInputDocument> attachmentdocs = sdocdata.getInputAttachments(docRef);
-                            if (attachmentdocs != null && !attachmentdocs.isEmpty()) {
-                                docs.addAll(attachmentdocs);
-                            }
-                            // Objects
-                            List<SolrInputDocument> objDocs = sdocdata.getInputObjects(docRef);
-                            if (objDocs != null && !objDocs.isEmpty()) {
-                                docs.addAll(objDocs);
-                            }
-                            // Properties
-                            List<SolrInputDocument> propDocs = sdocdata.getInputProperties(docRef);
-                            if (propDocs != null && !propDocs.isEmpty()) {
-                                docs.addAll(propDocs);
-                            }
-                        } catch (Exception e) {
-                            logger.error("Error fetching document [" + docRef.getName() + "]", e);
-                        }
-                    }
+        this.batchSizer =
+            new IndexBatchSizer(batchSize, this.configuration.getProperty("search.indexer.batchMaxSize", 200),
+                this.configuration.getProperty("search.indexer.batchMaxBytes", 10L * 1024 * 1024),
+                this.configuration.getProperty("search.indexer.batchAdaptive", false));
 
-                    try {
-                        UpdateResponse updateResponse = solrServer.add(docs);
-                        UpdateResponse commitResponse = solrServer.commit();
+        this.jobExecutor = Executors.newFixedThreadPool(maxJobs, new IndexerThreadFactory(THREAD_PREFIX));
+        this.extractorExecutor =
+            new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                queueSize), new IndexerThreadFactory(THREAD_PREFIX + "-extractor"),
+                new CallerRunsUnlessShutdownPolicy());
+        this.writeQueue = new ArrayBlockingQueue<IndexBatch>(queueSize);
 
-                        for (SolrInputDocument doc : docs) {
-                            String lang = (String) doc.getFieldValue(DocumentField.LANGUAGE);
-                            if (doc.getField(DocumentField.DOCUMENT_CONTENT + USCORE + lang) != null) {
-                                doc.removeField(DocumentField.DOCUMENT_CONTENT + USCORE + lang);
-                            }
-                            if (doc.getField(DocumentField.ATTACHMENT_CONTENT + USCORE + lang) != null) {
-                                doc.removeField(DocumentField.ATTACHMENT_CONTENT + USCORE + lang);
-                            }
-                            if (doc.getField(DocumentField.OBJECT_CONTENT + USCORE + lang) != null) {
-                                doc.removeField(DocumentField.OBJECT_CONTENT + USCORE + lang);
-                            }
-                        }
+        this.writerThread = new IndexerThreadFactory(THREAD_PREFIX + "-writer").newThread(new IndexWriter());
+        this.writerThread.start();
 
-                        // Send out a notification
-                        indexerStatus.addStepDetails(
-                            fetchTime + updateResponse.getElapsedTime() + commitResponse.getElapsedTime(), 10, docs);
-                        totalTime += fetchTime + updateResponse.getElapsedTime() + commitResponse.getElapsedTime();
+        String policy = this.configuration.getProperty("search.indexer.commitPolicy", "commitwithin");
+        try {
+            this.commitPolicy = this.componentManager.getInstance(CommitPolicy.class, policy);
+        } catch (ComponentLookupException e) {
+            throw new InitializationException("Failed to lookup the [" + policy + "] commit policy", e);
+        }
+        this.commitScheduler =
+            Executors.newSingleThreadScheduledExecutor(new IndexerThreadFactory(THREAD_PREFIX + "-committer"));
+        this.commitScheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (commitPolicy.isCommitDue()) {
+                    try {
+                        commit();
                     } catch (Exception e) {
-                        logger.error("Error commiting solr index updates");
+                        logger.error("Error commiting solr index updates", e);
                     }
-
                 }
-
-            } finally {
-                execution.removeContext();
             }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        logger.info("Solrj indexer started with [" + threads + "] extractor threads and at most [" + maxJobs
+            + "] concurrent indexing jobs");
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Disposable#dispose()
+     */
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.jobExecutor.shutdownNow();
+        this.extractorExecutor.shutdownNow();
+        this.writerThread.interrupt();
+        this.commitScheduler.shutdownNow();
+    }
 
-            logger.info("Total time taken to index [" + indexerStatus.getTotalDocCount() + "] documents is "
-                + totalTime);
+    /**
+     * Commits the pending updates.
+     * 
+     * @throws SolrServerException if the commit fails.
+     * @throws IOException if the commit fails.
+     */
+    private void commit() throws SolrServerException, IOException
+    {
+        // The updates sent during the commit may not be part of it, they stay pending.
+        int pendingUpdates = this.commitPolicy.getPendingUpdates();
+        try {
+            this.solrServer.commit();
+        } catch (SolrServerException e) {
+            this.updateFailures.incrementAndGet();
+            throw e;
+        } catch (IOException e) {
+            this.updateFailures.incrementAndGet();
+            throw e;
+        }
+        this.commitPolicy.onCommit(pendingUpdates);
+    }
 
-            indexerStatusMap.remove(Thread.currentThread().getName());
+    /**
+     * Sends an update to Solr and commits it if the commit policy says so.
+     * 
+     * @param request the update to send.
+     * @param count number of added or deleted entries.
+     * @throws SolrServerException if the update fails.
+     * @throws IOException if the update fails.
+     */
+    private void update(UpdateRequest request, int count) throws SolrServerException, IOException
+    {
+        request.setCommitWithin(this.commitPolicy.getCommitWithin());
+        request.process(this.solrServer);
+        Rebuild currentRebuild = this.rebuild;
+        if (currentRebuild != null) {
+            request.process(currentRebuild.server);
+        }
+        if (this.commitPolicy.onUpdate(count)) {
+            commit();
+        }
+    }
 
+    /**
+     * Drops the content fields of documents already sent to Solr, they are only kept for the indexer status.
+     * 
+     * @param docs documents sent to Solr.
+     */
+    private void removeContentFields(List<SolrInputDocument> docs)
+    {
+        for (SolrInputDocument doc : docs) {
+            String lang = (String) doc.getFieldValue(DocumentField.LANGUAGE);
+            if (doc.getField(DocumentField.DOCUMENT_CONTENT + USCORE + lang) != null) {
+                doc.removeField(DocumentField.DOCUMENT_CONTENT + USCORE + lang);
+            }
+            if (doc.getField(DocumentField.ATTACHMENT_CONTENT + USCORE + lang) != null) {
+                doc.removeField(DocumentField.ATTACHMENT_CONTENT + USCORE + lang);
+            }
+            if (doc.getField(DocumentField.OBJECT_CONTENT + USCORE + lang) != null) {
+                doc.removeField(DocumentField.OBJECT_CONTENT + USCORE + lang);
+            }
         }
     }
 
@@ -284,24 +1121,8 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
             if (documentAccessBridge.exists(doc) && !doc.getName().contains("WatchList")) {
                 SolrjDocumentData sdocdata =
                     this.componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
-                UpdateResponse response = null;
-                // Document
-                SolrInputDocument sdoc = sdocdata.getInputDocument(doc);
-                if (sdoc != null) {
-                    response = solrServer.add(sdoc);
-                }
-
-                // Attachments
-                addDocsToSolr(sdocdata.getInputAttachments(doc));
-
-                // Objects
-                addDocsToSolr(sdocdata.getInputObjects(doc));
-
-                // Properties
-                addDocsToSolr(sdocdata.getInputProperties(doc));
-
-                // Commit Response
-                response = solrServer.commit();
+                // The document and its entities are sent in a single update
+                addDocsToSolr(sdocdata.getInputDocumentSnapshot(doc));
                 return true;
             }
         } catch (Exception e) {
@@ -317,7 +1138,9 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     {
         if (!documents.isEmpty()) {
             try {
-                solrServer.add(documents);
+                UpdateRequest request = new UpdateRequest();
+                request.add(documents);
+                update(request, documents.size());
             } catch (Exception e) {
                 logger.error("Error adding documents to the solr server");
             }
@@ -334,8 +1157,9 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     {
         try {
             SolrjDocumentData sdocdata = this.componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
-            solrServer.deleteById(sdocdata.getDocumentId(doc));
-            solrServer.commit();
+            UpdateRequest request = new UpdateRequest();
+            request.deleteById(sdocdata.getDocumentId(doc));
+            update(request, 1);
             return true;
         } catch (Exception e) {
             logger.error("Error deleting index of the document " + doc.getName());
@@ -343,6 +1167,44 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentIndexer#getIndexedVersions(java.util.List)
+     */
+    @Override
+    public Map<String, String> getIndexedVersions(List<String> documentIds)
+    {
+        Map<String, String> versions = new HashMap<String, String>();
+        for (int i = 0; i < documentIds.size(); i += VERSION_LOOKUP_SIZE) {
+            List<String> ids = documentIds.subList(i, Math.min(i + VERSION_LOOKUP_SIZE, documentIds.size()));
+
+            StringBuilder query = new StringBuilder(DocumentField.ID + ":(");
+            for (int j = 0; j < ids.size(); j++) {
+                if (j > 0) {
+                    query.append(" OR ");
+                }
+                query.append(ClientUtils.escapeQueryChars(ids.get(j)));
+            }
+            query.append(')');
+
+            SolrQuery solrQuery = new SolrQuery(query.toString());
+            solrQuery.setFields(DocumentField.ID, DocumentField.VERSION);
+            solrQuery.setRows(ids.size());
+            try {
+                for (SolrDocument doc : this.solrServer.query(solrQuery, METHOD.POST).getResults()) {
+                    Object version = doc.getFieldValue(DocumentField.VERSION);
+                    if (version != null) {
+                        versions.put((String) doc.getFieldValue(DocumentField.ID), version.toString());
+                    }
+                }
+            } catch (SolrServerException e) {
+                logger.error("Error looking up the indexed version of [" + ids.size() + "] documents", e);
+            }
+        }
+        return versions;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -353,7 +1215,7 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     {
         try {
             solrServer.deleteByQuery("*:*");
-            solrServer.commit();
+            commit();
             return true;
         } catch (Exception e) {
             logger.error("Error deleting entire search index");
@@ -361,6 +1223,103 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentIndexer#beginRebuild()
+     */
+    @Override
+    public synchronized void beginRebuild() throws SearchIndexingException
+    {
+        if (this.rebuild != null) {
+            throw new SearchIndexingException("A rebuild of the index is already running");
+        }
+
+        try {
+            SolrServer server = (SolrServer) this.searchEngine.getRebuildSearchEngine();
+            server.deleteByQuery("*:*");
+            server.commit();
+            this.rebuild = new Rebuild(server);
+        } catch (Exception e) {
+            throw new SearchIndexingException("Failed to prepare the rebuild core", e);
+        }
+        logger.info("Started rebuilding the index");
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentIndexer#endRebuild(boolean)
+     */
+    @Override
+    public void endRebuild(boolean swap)
+    {
+        Rebuild currentRebuild = this.rebuild;
+        if (currentRebuild != null && currentRebuild.owner == Thread.currentThread()) {
+            currentRebuild.swap = swap;
+            currentRebuild.scheduled = true;
+            finishRebuild(currentRebuild);
+        }
+    }
+
+    /**
+     * Swaps the rebuild core with the live one once all the jobs of the rebuild are done.
+     * 
+     * @param doneRebuild the rebuild.
+     */
+    private void finishRebuild(Rebuild doneRebuild)
+    {
+        if (!doneRebuild.scheduled || doneRebuild.pendingJobs.get() > 0) {
+            return;
+        }
+        synchronized (this) {
+            if (this.rebuild != doneRebuild) {
+                return;
+            }
+            this.rebuild = null;
+        }
+
+        if (!doneRebuild.swap) {
+            logger.info("Abandoned the rebuild of the index");
+            return;
+        }
+        if (doneRebuild.failed) {
+            logger.error("Abandoned the rebuild of the index since some documents could not be listed or written, the"
+                + " previous index is still live");
+            return;
+        }
+        try {
+            int pendingUpdates = this.commitPolicy.getPendingUpdates();
+            doneRebuild.server.commit();
+            this.searchEngine.swapRebuildSearchEngine();
+            this.commitPolicy.onCommit(pendingUpdates);
+            logger.info("Rebuilt index is now live");
+        } catch (Exception e) {
+            logger.error("Failed to swap the rebuilt index, the previous index is still live", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentIndexer#rollbackRebuild()
+     */
+    @Override
+    public synchronized boolean rollbackRebuild()
+    {
+        if (this.rebuild != null) {
+            logger.error("Can't roll back while a rebuild of the index is running");
+            return false;
+        }
+        try {
+            this.searchEngine.swapRebuildSearchEngine();
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to roll back the last rebuild of the index", e);
+        }
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -371,8 +1330,9 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     {
         try {
             SolrjDocumentData sdocdata = this.componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
-            solrServer.deleteById(sdocdata.getAttachmentId(attachment));
-            solrServer.commit();
+            UpdateRequest request = new UpdateRequest();
+            request.deleteById(sdocdata.getAttachmentId(attachment));
+            update(request, 1);
             return true;
         } catch (Exception e) {
             logger.error("Error deleting attachment.");
@@ -426,12 +1386,44 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     public void indexDocuments(EntityReference reference, List<DocumentReference> docs)
     {
         if (docs.size() > 0) {
-            IndexThread indexThread = new IndexThread(reference, docs);
-            thread = new Thread(indexThread);
-            thread.setName("SolrjIndexer[" + indexThread.hashCode() + "]");
-            thread.setDaemon(true);
-            thread.setPriority(Thread.MIN_PRIORITY);
-            thread.start();
+            indexDocuments(reference, docs.iterator(), docs.size());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentIndexer#indexDocuments(org.xwiki.model.reference.EntityReference,
+     *      java.util.Iterator, int)
+     */
+    @Override
+    public void indexDocuments(EntityReference reference, Iterator<DocumentReference> docs, int total)
+    {
+        indexDocuments(reference, docs, total, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.DocumentIndexer#indexDocuments(org.xwiki.model.reference.EntityReference,
+     *      java.util.Iterator, int, org.xwiki.platform.search.index.IndexCheckpoint)
+     */
+    @Override
+    public void indexDocuments(EntityReference reference, Iterator<DocumentReference> docs, int total,
+        IndexCheckpoint checkpoint)
+    {
+        // Don't touch the iterator here: it may query the database, which is the job of the indexer thread.
+        if (total > 0) {
+            IndexJob job = new IndexJob(reference, docs, total, checkpoint);
+            try {
+                this.jobExecutor.execute(job);
+            } catch (RejectedExecutionException e) {
+                logger.error("Indexer is shutting down, skipping [" + total + "] documents");
+                this.indexerStatusMap.remove(job.name);
+                if (job.jobRebuild != null) {
+                    job.jobRebuild.pendingJobs.decrementAndGet();
+                }
+            }
         }
 
     }
@@ -446,12 +1438,15 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     public void deleteIndex(EntityReference reference, List<DocumentReference> docs)
     {
         try {
+            UpdateRequest request = new UpdateRequest();
             if (reference.getType() == EntityType.WIKI) {
-                solrServer.deleteByQuery("wiki:" + reference.getName());
+                request.deleteByQuery(DocumentField.WIKI + ':' + ClientUtils.escapeQueryChars(reference.getName()));
             } else if (reference.getType() == EntityType.SPACE) {
-                solrServer.deleteByQuery("space:" + reference.getName());
+                request.deleteByQuery(DocumentField.WIKI + ':'
+                    + ClientUtils.escapeQueryChars(reference.getParent().getName()) + " AND " + DocumentField.SPACE
+                    + ':' + ClientUtils.escapeQueryChars(reference.getName()));
             }
-            solrServer.commit();
+            update(request, docs != null ? docs.size() : 1);
         } catch (Exception e) {
             logger.error("Error deleting index for EntityReference:" + reference);
         }
@@ -466,7 +1461,19 @@ public class SolrjDocumentIndexer extends DocumentHelper implements DocumentInde
     @Override
     public boolean indexAttachment(AttachmentReference attachment, DocumentModelBridge doc)
     {
-        // TODO Auto-generated method stub
+        try {
+            SolrjDocumentData sdocdata = this.componentManager.getInstance(DocumentData.class, SolrjDocumentData.HINT);
+            List<SolrInputDocument> sdocs = sdocdata.getSolrInputAttachments(attachment, doc);
+            if (!sdocs.isEmpty()) {
+                UpdateRequest request = new UpdateRequest();
+                request.add(sdocs);
+                update(request, sdocs.size());
+                return true;
+            }
+        } catch (Exception e) {
+            logger.error("Error indexing attachment [" + attachment.getName() + "] of document ["
+                + attachment.getDocumentReference().getName() + "]", e);
+        }
         return false;
     }
 
@@ -19,10 +19,14 @@
  */
 package org.xwiki.platform.search.index.internal;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.platform.search.index.BuildIndex;
+import org.xwiki.platform.search.index.DeleteIndex;
+import org.xwiki.platform.search.index.DocumentIndexer;
 
 /**
  * @version $Id$
@@ -32,5 +36,57 @@ import org.xwiki.component.annotation.Component;
 @Singleton
 public class SolrjRebuildIndex extends AbstractRebuildIndex
 {
+    /**
+     * Build index component for solrj.
+     */
+    @Inject
+    @Named("solrj")
+    private BuildIndex buildIndex;
 
+    /**
+     * Delete index component for solrj.
+     */
+    @Inject
+    @Named("solrj")
+    private DeleteIndex deleteIndex;
+
+    /**
+     * Document indexer for solrj.
+     */
+    @Inject
+    @Named(SolrjDocumentIndexer.HINT)
+    private DocumentIndexer indexer;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.internal.AbstractRebuildIndex#getBuildIndex()
+     */
+    @Override
+    protected BuildIndex getBuildIndex()
+    {
+        return this.buildIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.internal.AbstractRebuildIndex#getDeleteIndex()
+     */
+    @Override
+    protected DeleteIndex getDeleteIndex()
+    {
+        return this.deleteIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.internal.AbstractRebuildIndex#getDocumentIndexer()
+     */
+    @Override
+    protected DocumentIndexer getDocumentIndexer()
+    {
+        return this.indexer;
+    }
 }
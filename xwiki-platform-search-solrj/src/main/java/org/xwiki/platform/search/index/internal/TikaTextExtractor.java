@@ -0,0 +1,526 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.platform.search.index.TextExtractor;
+
+/**
+ * Extracts texts with Tika in a dedicated pool of threads. Each extraction gets a time budget, counted from the moment
+ * it is submitted so that the time waiting for a free worker is bounded too; when the budget is exceeded the worker is
+ * interrupted and the content stream closed so that the parser gives up. A worker still stuck in a parser after that
+ * is abandoned and the pool is replaced, so that stuck workers can't block the extractions. The extracted text is
+ * streamed into chunks and cut at a maximum number of characters so that huge documents can't exhaust the heap. The
+ * callers are the indexer extractor threads, which bounds the number of queued extractions.
+ * 
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class TikaTextExtractor implements TextExtractor, Initializable, Disposable
+{
+    /**
+     * Prefix of the names of the extraction threads.
+     */
+    private static final String THREAD_PREFIX = "TikaTextExtractor";
+
+    /**
+     * Time in milliseconds given to an interrupted worker to give up before it is considered stuck.
+     */
+    private static final long STUCK_GRACE_TIME = 1000L;
+
+    /**
+     * Logger.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Detects the content type and parses the contents. Thread safe.
+     */
+    private final Parser parser = new AutoDetectParser();
+
+    /**
+     * Runs the extractions.
+     */
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * Number of extraction threads.
+     */
+    private int threads;
+
+    /**
+     * Time budget of an extraction, in milliseconds.
+     */
+    private long timeout;
+
+    /**
+     * Maximum number of characters extracted from a content.
+     */
+    private int maxCharacters;
+
+    /**
+     * Number of characters of the chunks of extracted text.
+     */
+    private int chunkSize;
+
+    /**
+     * Size in bytes above which contents are not extracted.
+     */
+    private long maxFileSize;
+
+    /**
+     * Time in milliseconds above which an extraction is reported as slow.
+     */
+    private long slowThreshold;
+
+    /**
+     * Number of contents extracted.
+     */
+    private final AtomicLong extracted = new AtomicLong();
+
+    /**
+     * Number of extracted texts truncated to the maximum number of characters.
+     */
+    private final AtomicLong truncated = new AtomicLong();
+
+    /**
+     * Number of contents which failed to be parsed.
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Number of contents which took longer than the time budget.
+     */
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Number of contents not extracted because too big.
+     */
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Number of slow extractions.
+     */
+    private final AtomicLong slow = new AtomicLong();
+
+    /**
+     * Number of workers abandoned because stuck in a parser.
+     */
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * Total time spent extracting, in milliseconds.
+     */
+    private final AtomicLong totalTime = new AtomicLong();
+
+    /**
+     * Splits the written text in chunks of about the same size, cut on white spaces when possible, and stops the
+     * extraction once the maximum number of characters has been written.
+     * 
+     * @version $Id$
+     */
+    private static class ChunkWriter extends Writer
+    {
+        /**
+         * The chunks written so far.
+         */
+        private final List<String> chunks = new ArrayList<String>();
+
+        /**
+         * The chunk being written.
+         */
+        private final StringBuilder chunk;
+
+        /**
+         * Size of the chunks.
+         */
+        private final int chunkSize;
+
+        /**
+         * Number of characters which can still be written.
+         */
+        private int remaining;
+
+        /**
+         * Whether the maximum number of characters was reached.
+         */
+        private boolean limitReached;
+
+        /**
+         * @param chunkSize size of the chunks.
+         * @param maxCharacters maximum number of characters written.
+         */
+        public ChunkWriter(int chunkSize, int maxCharacters)
+        {
+            this.chunkSize = chunkSize;
+            this.chunk = new StringBuilder(chunkSize);
+            this.remaining = maxCharacters;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.io.Writer#write(char[], int, int)
+         */
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            int count = Math.min(len, this.remaining);
+            for (int i = off; i < off + count; i++) {
+                // Null characters separate the chunks in the extraction cache.
+                this.chunk.append(cbuf[i] == '\0' ? ' ' : cbuf[i]);
+                if (this.chunk.length() >= this.chunkSize) {
+                    cut();
+                }
+            }
+            this.remaining -= count;
+            if (count < len) {
+                this.limitReached = true;
+                throw new IOException("Maximum number of characters reached");
+            }
+        }
+
+        /**
+         * Ends the current chunk on its last white space, if it's in the second half of the chunk.
+         */
+        private void cut()
+        {
+            int end = this.chunk.length();
+            for (int i = end - 1; i > this.chunkSize / 2; i--) {
+                if (Character.isWhitespace(this.chunk.charAt(i))) {
+                    end = i + 1;
+                    break;
+                }
+            }
+            this.chunks.add(this.chunk.substring(0, end));
+            this.chunk.delete(0, end);
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.io.Writer#flush()
+         */
+        @Override
+        public void flush()
+        {
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.io.Writer#close()
+         */
+        @Override
+        public void close()
+        {
+        }
+
+        /**
+         * @return the chunks of written text.
+         */
+        public List<String> getChunks()
+        {
+            if (this.chunk.length() > 0) {
+                this.chunks.add(this.chunk.toString());
+                this.chunk.setLength(0);
+            }
+            return this.chunks;
+        }
+    }
+
+    /**
+     * Extraction of a content.
+     * 
+     * @version $Id$
+     */
+    private class ExtractionTask implements Callable<List<String>>
+    {
+        /**
+         * Name of the content.
+         */
+        private final String name;
+
+        /**
+         * The content.
+         */
+        private final InputStream content;
+
+        /**
+         * Released when the worker ends the extraction, whatever its outcome.
+         */
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        /**
+         * Time the extraction started.
+         */
+        private volatile long startTime;
+
+        /**
+         * @param name name of the content.
+         * @param content the content.
+         */
+        public ExtractionTask(String name, InputStream content)
+        {
+            this.name = name;
+            this.content = content;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public List<String> call() throws Exception
+        {
+            this.startTime = System.currentTimeMillis();
+            try {
+                ChunkWriter writer = new ChunkWriter(chunkSize, maxCharacters);
+                Metadata metadata = new Metadata();
+                metadata.set(Metadata.RESOURCE_NAME_KEY, this.name);
+                try {
+                    parser.parse(this.content, new BodyContentHandler(writer), metadata, new ParseContext());
+                } catch (Exception e) {
+                    if (!writer.limitReached) {
+                        throw e;
+                    }
+                    truncated.incrementAndGet();
+                }
+                return writer.getChunks();
+            } finally {
+                this.finished.countDown();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.threads = this.configuration.getProperty("search.indexer.extractor.threads", 2);
+        this.timeout = this.configuration.getProperty("search.indexer.extractor.timeout", 60000L);
+        this.maxCharacters = this.configuration.getProperty("search.indexer.extractor.maxCharacters", 1000000);
+        this.chunkSize = this.configuration.getProperty("search.indexer.extractor.chunkSize", 65536);
+        this.maxFileSize = this.configuration.getProperty("search.indexer.extractor.maxFileSize", 100L * 1024 * 1024);
+        this.slowThreshold = this.configuration.getProperty("search.indexer.extractor.slowThreshold", 5000L);
+
+        this.executor = createExecutor();
+    }
+
+    /**
+     * @return a new pool of extraction threads.
+     */
+    private ThreadPoolExecutor createExecutor()
+    {
+        return new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, THREAD_PREFIX + "-" + this.count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+    }
+
+    /**
+     * Replaces the pool holding a stuck worker. The tasks already queued still run on its other workers, and the
+     * stuck worker is left to end on its own since it can't be stopped.
+     * 
+     * @param stuckExecutor the pool holding the stuck worker.
+     */
+    private synchronized void replaceExecutor(ThreadPoolExecutor stuckExecutor)
+    {
+        if (this.executor == stuckExecutor && !stuckExecutor.isShutdown()) {
+            this.executor = createExecutor();
+            stuckExecutor.shutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Disposable#dispose()
+     */
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.TextExtractor#extract(java.lang.String, java.io.InputStream, long)
+     */
+    @Override
+    public List<String> extract(String name, InputStream content, long size)
+    {
+        if (this.maxFileSize > 0 && size > this.maxFileSize) {
+            this.skipped.incrementAndGet();
+            this.logger.warn("Skipping the extraction of [" + name + "], its size [" + size
+                + "] is above the maximum size");
+            IOUtils.closeQuietly(content);
+            return null;
+        }
+
+        ExtractionTask task = new ExtractionTask(name, content);
+        ThreadPoolExecutor taskExecutor = this.executor;
+        Future<List<String>> future = null;
+        try {
+            future = taskExecutor.submit(task);
+            List<String> chunks = future.get(this.timeout, TimeUnit.MILLISECONDS);
+
+            this.extracted.incrementAndGet();
+            return chunks;
+        } catch (TimeoutException e) {
+            this.timedOut.incrementAndGet();
+            this.logger.warn("Extraction of [" + name + "] took more than [" + this.timeout + "] ms, giving up");
+            future.cancel(true);
+            abandonIfStuck(task, taskExecutor);
+        } catch (ExecutionException e) {
+            this.failed.incrementAndGet();
+            this.logger.warn("Failed to extract the text of [" + name + "]: " + e.getCause());
+        } catch (RejectedExecutionException e) {
+            if (this.executor != taskExecutor && !this.executor.isShutdown()) {
+                // The pool was replaced in the meantime.
+                return extract(name, content, size);
+            }
+            this.failed.incrementAndGet();
+            this.logger.warn("Text extractor is shutting down, skipping [" + name + "]");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (future != null) {
+                future.cancel(true);
+            }
+        } finally {
+            // Closing the stream also stops the parsers which don't check the interruption flag.
+            IOUtils.closeQuietly(content);
+            long time = task.startTime > 0 ? System.currentTimeMillis() - task.startTime : 0;
+            this.totalTime.addAndGet(time);
+            if (time > this.slowThreshold) {
+                this.slow.incrementAndGet();
+                this.logger.warn("Extraction of [" + name + "] took [" + time + "] ms");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Replaces the pool if the worker of a timed out extraction doesn't give up once interrupted and its content
+     * stream closed.
+     * 
+     * @param task the timed out extraction, already cancelled.
+     * @param taskExecutor the pool the extraction was submitted to.
+     */
+    private void abandonIfStuck(ExtractionTask task, ThreadPoolExecutor taskExecutor)
+    {
+        IOUtils.closeQuietly(task.content);
+        if (task.startTime == 0) {
+            // Cancelled while waiting for a worker.
+            return;
+        }
+        try {
+            if (!task.finished.await(STUCK_GRACE_TIME, TimeUnit.MILLISECONDS)) {
+                this.abandoned.incrementAndGet();
+                this.logger.warn("Extraction of [" + task.name + "] is stuck, abandoning its worker");
+                replaceExecutor(taskExecutor);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.index.TextExtractor#getStatistics()
+     */
+    @Override
+    public Map<String, Long> getStatistics()
+    {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("extracted", this.extracted.get());
+        statistics.put("truncated", this.truncated.get());
+        statistics.put("failed", this.failed.get());
+        statistics.put("timedOut", this.timedOut.get());
+        statistics.put("skipped", this.skipped.get());
+        statistics.put("slow", this.slow.get());
+        statistics.put("abandoned", this.abandoned.get());
+        statistics.put("totalTime", this.totalTime.get());
+        return statistics;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.internal;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.request.LukeRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.LukeResponse;
+import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.platform.search.SearchEngine;
+import org.xwiki.platform.search.SearchException;
+
+/**
+ * Search engine talking to an external Solr over HTTP, selected with <code>search.solr.engine</code>. Queries go
+ * through a pooled client using the binary (javabin) codec while updates are queued and streamed to Solr by several
+ * connections, so that indexing doesn't wait for each batch to be processed. The updates which failed to be sent
+ * make the next commit fail, so that the indexer doesn't consider them done.
+ * 
+ * @version $Id$
+ */
+@Component
+@Named(RemoteSolrjSearchEngine.HINT)
+@Singleton
+public class RemoteSolrjSearchEngine implements SearchEngine, Initializable, Disposable
+{
+    /**
+     * remotesolrjsearchengine HINT.
+     */
+    public static final String HINT = "remotesolrjsearchengine";
+
+    /**
+     * Prefix of the configuration properties of the remote engine.
+     */
+    private static final String PROPERTY_PREFIX = "search.solr.remote.";
+
+    /**
+     * Suffix of the name of the core the index is rebuilt into.
+     */
+    private static final String REBUILD_CORE_SUFFIX = "-rebuild";
+
+    /**
+     * Separator of the URL paths.
+     */
+    private static final String SLASH = "/";
+
+    /**
+     * Logger component.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * Properties.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * URL of the Solr web application, without the core name.
+     */
+    private String baseUrl;
+
+    /**
+     * Name of the core holding the index.
+     */
+    private String coreName;
+
+    /**
+     * Sends the core administration requests.
+     */
+    private HttpSolrServer adminServer;
+
+    /**
+     * The server of the live core.
+     */
+    private RemoteSolrServer solrServer;
+
+    /**
+     * The server of the rebuild core, null until it is needed.
+     */
+    private RemoteSolrServer rebuildServer;
+
+    /**
+     * Minimum time between two reads of the index version, in milliseconds.
+     */
+    private long versionCheckInterval;
+
+    /**
+     * When the index version was last read.
+     */
+    private long versionCheckTime;
+
+    /**
+     * Last index version read.
+     */
+    private volatile long indexVersion = -1;
+
+    /**
+     * Names of the indexed fields, read with the index version.
+     */
+    private volatile Set<String> indexFields = Collections.emptySet();
+
+    /**
+     * Sends the query requests to a pooled client and the update requests to a queue-backed client, so that the same
+     * server object can be used for searching and indexing.
+     * 
+     * @version $Id$
+     */
+    private static class RemoteSolrServer extends SolrServer
+    {
+        /**
+         * Class version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Sends the queries.
+         */
+        private final HttpSolrServer queryServer;
+
+        /**
+         * Streams the updates.
+         */
+        private final ConcurrentUpdateSolrServer updateServer;
+
+        /**
+         * First failure of the queued updates since the last commit, null if none failed.
+         */
+        private final AtomicReference<Throwable> updateError;
+
+        /**
+         * @param queryServer sends the queries.
+         * @param updateServer streams the updates.
+         * @param updateError receives the first failure of the queued updates.
+         */
+        public RemoteSolrServer(HttpSolrServer queryServer, ConcurrentUpdateSolrServer updateServer,
+            AtomicReference<Throwable> updateError)
+        {
+            this.queryServer = queryServer;
+            this.updateServer = updateServer;
+            this.updateError = updateError;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The update client waits for the queued updates before sending a commit or a delete, so they apply in order.
+         * A commit fails without being sent if queued updates failed since the last commit.
+         * 
+         * @see org.apache.solr.client.solrj.SolrServer#request(org.apache.solr.client.solrj.SolrRequest)
+         */
+        @Override
+        public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException
+        {
+            if (request instanceof UpdateRequest) {
+                SolrParams params = request.getParams();
+                if (params != null
+                    && (params.getBool(UpdateParams.COMMIT, false) || params.getBool(UpdateParams.OPTIMIZE, false))) {
+                    this.updateServer.blockUntilFinished();
+                    Throwable error = this.updateError.getAndSet(null);
+                    if (error != null) {
+                        throw new SolrServerException("Queued updates failed to be sent to ["
+                            + this.queryServer.getBaseURL() + "], not committing", error);
+                    }
+                }
+                return this.updateServer.request(request);
+            }
+            return this.queryServer.request(request);
+        }
+
+        /**
+         * Sends the queued updates and releases the connections.
+         */
+        public void shutdown()
+        {
+            this.updateServer.blockUntilFinished();
+            this.updateServer.shutdown();
+            this.queryServer.shutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.baseUrl = StringUtils.removeEnd(this.configuration.getProperty(PROPERTY_PREFIX + "url",
+            "http://localhost:8983/solr"), SLASH);
+        this.coreName = this.configuration.getProperty(PROPERTY_PREFIX + "core", "collection1");
+        this.versionCheckInterval = this.configuration.getProperty(PROPERTY_PREFIX + "versionCheckInterval", 2000L);
+
+        this.adminServer = createQueryServer(this.baseUrl);
+        try {
+            this.solrServer = createServer(this.coreName);
+        } catch (MalformedURLException e) {
+            throw new InitializationException("Invalid solr URL [" + this.baseUrl + "]", e);
+        }
+
+        logger.info("Using the remote solr core [" + this.coreName + "] of [" + this.baseUrl + "]");
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Disposable#dispose()
+     */
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.solrServer.shutdown();
+        synchronized (this) {
+            if (this.rebuildServer != null) {
+                this.rebuildServer.shutdown();
+            }
+        }
+        this.adminServer.shutdown();
+    }
+
+    /**
+     * @param core name of a core.
+     * @return a server sending the queries and the updates to the core.
+     * @throws MalformedURLException if the URL of the core is invalid.
+     */
+    private RemoteSolrServer createServer(String core) throws MalformedURLException
+    {
+        final String url = this.baseUrl + SLASH + core;
+        final AtomicReference<Throwable> updateError = new AtomicReference<Throwable>();
+
+        // The update client shares the connections and the timeouts of the query client.
+        HttpSolrServer queryServer = createQueryServer(url);
+        ConcurrentUpdateSolrServer updateServer =
+            new ConcurrentUpdateSolrServer(url, queryServer.getHttpClient(), this.configuration.getProperty(
+                PROPERTY_PREFIX + "queueSize", 20), this.configuration.getProperty(PROPERTY_PREFIX + "updateThreads", 4))
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void handleError(Throwable e)
+                {
+                    logger.error("Failed to send updates to the remote solr core [" + url + "]", e);
+                    updateError.compareAndSet(null, e);
+                }
+            };
+
+        return new RemoteSolrServer(queryServer, updateServer, updateError);
+    }
+
+    /**
+     * @param url URL of a core or of the Solr web application.
+     * @return a pooled client using the binary codec.
+     */
+    private HttpSolrServer createQueryServer(String url)
+    {
+        HttpSolrServer server = new HttpSolrServer(url);
+        server.setParser(new BinaryResponseParser());
+        server.setRequestWriter(new BinaryRequestWriter());
+        int maxConnections = this.configuration.getProperty(PROPERTY_PREFIX + "maxConnections", 32);
+        server.setMaxTotalConnections(maxConnections);
+        server.setDefaultMaxConnectionsPerHost(maxConnections);
+        server.setConnectionTimeout(this.configuration.getProperty(PROPERTY_PREFIX + "connectionTimeout", 5000));
+        server.setSoTimeout(this.configuration.getProperty(PROPERTY_PREFIX + "soTimeout", 60000));
+        return server;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getSearchEngine()
+     */
+    @Override
+    public SolrServer getSearchEngine()
+    {
+        return this.solrServer;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * There is no core container in this JVM.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getCoreContainer()
+     */
+    @Override
+    public Object getCoreContainer()
+    {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getIndexFields()
+     */
+    @Override
+    public Set<String> getIndexFields()
+    {
+        refreshIndexInfo();
+        return this.indexFields;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The version is read from Solr at most every <code>search.solr.remote.versionCheckInterval</code> milliseconds.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getIndexVersion()
+     */
+    @Override
+    public long getIndexVersion()
+    {
+        refreshIndexInfo();
+        return this.indexVersion;
+    }
+
+    /**
+     * Reads the version and the fields of the index if they were not read recently.
+     */
+    private void refreshIndexInfo()
+    {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - this.versionCheckTime < this.versionCheckInterval) {
+                return;
+            }
+            this.versionCheckTime = now;
+        }
+
+        try {
+            LukeRequest request = new LukeRequest();
+            request.setNumTerms(0);
+            LukeResponse response = request.process(this.solrServer);
+            Object version = response.getIndexInfo().get("version");
+            if (version instanceof Number) {
+                if (((Number) version).longValue() != this.indexVersion || this.indexFields.isEmpty()) {
+                    this.indexFields =
+                        Collections.unmodifiableSet(new HashSet<String>(response.getFieldInfo().keySet()));
+                }
+                this.indexVersion = ((Number) version).longValue();
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to read the version of the remote solr index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The index is rebuilt into a second core of the remote Solr, sharing the instance directory of the live core.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getRebuildSearchEngine()
+     */
+    @Override
+    public synchronized SolrServer getRebuildSearchEngine() throws SearchException
+    {
+        String name = this.coreName + REBUILD_CORE_SUFFIX;
+        try {
+            if (getCoreStatus(name) == null) {
+                NamedList<Object> status = getCoreStatus(this.coreName);
+                if (status == null) {
+                    throw new SearchException("There is no solr core [" + this.coreName + "] at [" + this.baseUrl
+                        + "]");
+                }
+                CoreAdminRequest.Create create = new CoreAdminRequest.Create();
+                create.setCoreName(name);
+                create.setInstanceDir((String) status.get("instanceDir"));
+                create.setDataDir("data" + REBUILD_CORE_SUFFIX);
+                create.process(this.adminServer);
+                logger.info("Created the rebuild core [" + name + "]");
+            }
+        } catch (SearchException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SearchException("Failed to create the rebuild core [" + name + "]", e);
+        }
+
+        if (this.rebuildServer == null) {
+            try {
+                this.rebuildServer = createServer(name);
+            } catch (MalformedURLException e) {
+                throw new SearchException("Invalid solr URL [" + this.baseUrl + "]", e);
+            }
+        }
+        return this.rebuildServer;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The servers keep addressing the cores by name, so they follow the swap.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#swapRebuildSearchEngine()
+     */
+    @Override
+    public synchronized void swapRebuildSearchEngine() throws SearchException
+    {
+        String name = this.coreName + REBUILD_CORE_SUFFIX;
+        try {
+            if (getCoreStatus(name) == null) {
+                throw new SearchException("There is no rebuild core [" + name + "] to swap");
+            }
+            CoreAdminRequest swap = new CoreAdminRequest();
+            swap.setAction(CoreAdminAction.SWAP);
+            swap.setCoreName(this.coreName);
+            swap.setOtherCoreName(name);
+            swap.process(this.adminServer);
+        } catch (SearchException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SearchException("Failed to swap the cores [" + this.coreName + "] and [" + name + "]", e);
+        }
+        logger.info("Swapped the cores [" + this.coreName + "] and [" + name + "]");
+    }
+
+    /**
+     * @param name name of a core.
+     * @return the status of the core, null if there is no such core.
+     * @throws SolrServerException if the request fails.
+     * @throws IOException if the request fails.
+     */
+    private NamedList<Object> getCoreStatus(String name) throws SolrServerException, IOException
+    {
+        NamedList<Object> status = CoreAdminRequest.getStatus(name, this.adminServer).getCoreStatus(name);
+        return status == null || status.size() == 0 ? null : status;
+    }
+}
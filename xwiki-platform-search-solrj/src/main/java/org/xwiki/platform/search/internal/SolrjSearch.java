@@ -19,20 +19,27 @@
  */
 package org.xwiki.platform.search.internal;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.core.CoreContainer;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.platform.search.DocumentField;
 import org.xwiki.platform.search.SearchEngine;
 import org.xwiki.platform.search.SearchException;
@@ -43,6 +50,8 @@ import org.xwiki.platform.search.index.internal.AbstractDocumentIndexerStatus;
 import org.xwiki.platform.search.index.internal.SolrjDocumentIndexer;
 
 import com.google.gson.Gson;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.user.api.XWikiRightService;
 
 /**
  * Search implementation with Solrj backend.
@@ -60,12 +69,101 @@ public class SolrjSearch extends AbstractSearch
     public static final String HINT = "solrj";
 
     /**
-     * SearchEngine component.
+     * Name of a document which doesn't exist, used to check the rights of a space regardless of its documents.
+     */
+    private static final String RIGHTS_CHECK_DOCUMENT = "DocumentReservedForInternalXWikiUsage";
+
+    /**
+     * SearchEngine component, selected by {@link SolrjSearchEngine#ENGINE_KEY}.
      */
-    @Inject
-    @Named(SolrjSearchEngine.HINT)
     private SearchEngine searchEngine;
 
+    /**
+     * Configuration component.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Rights filter queries, per wiki and user.
+     */
+    private Map<String, RightsFilter> rightsFilters;
+
+    /**
+     * Search responses, per user and query. Only holds responses of the index version {@link #responsesVersion}.
+     */
+    private Map<String, SearchResponse> responses;
+
+    /**
+     * Index version of the cached search responses.
+     */
+    private long responsesVersion = -1;
+
+    /**
+     * Number of searches answered from the cache.
+     */
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * Number of searches sent to Solr.
+     */
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Number of times the cache was emptied because the index changed.
+     */
+    private final AtomicLong cacheInvalidations = new AtomicLong();
+
+    /**
+     * Rights filter query of a user, valid for an index version and until its expiration time. Saving a document
+     * changes the index version, so the filter is computed again once the rights, the preferences or the groups
+     * change, or once a space is created.
+     */
+    private static class RightsFilter
+    {
+        /**
+         * The filtered wiki.
+         */
+        private final String wiki;
+
+        /**
+         * The spaces whose view right was checked, the other spaces being created afterwards.
+         */
+        private final Set<String> spaces;
+
+        /**
+         * The filter query, null if the user can view all the spaces.
+         */
+        private final String filterQuery;
+
+        /**
+         * Version of the index when the filter was computed.
+         */
+        private final long indexVersion;
+
+        /**
+         * Time after which the filter has to be computed again.
+         */
+        private final long expirationTime;
+
+        /**
+         * @param wiki the filtered wiki.
+         * @param spaces the spaces whose view right was checked.
+         * @param filterQuery the filter query, null if the user can view all the spaces.
+         * @param indexVersion version of the index when the filter was computed.
+         * @param expirationTime time after which the filter has to be computed again.
+         */
+        RightsFilter(String wiki, Set<String> spaces, String filterQuery, long indexVersion, long expirationTime)
+        {
+            this.wiki = wiki;
+            this.spaces = spaces;
+            this.filterQuery = filterQuery;
+            this.indexVersion = indexVersion;
+            this.expirationTime = expirationTime;
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -75,6 +173,37 @@ public class SolrjSearch extends AbstractSearch
     @Override
     public void initialize() throws SearchException
     {
+        String engine = this.configuration.getProperty(SolrjSearchEngine.ENGINE_KEY, SolrjSearchEngine.HINT);
+        try {
+            this.searchEngine = this.componentManager.getInstance(SearchEngine.class, engine);
+        } catch (ComponentLookupException e) {
+            throw new SearchException("Failed to lookup the [" + engine + "] search engine", e);
+        }
+
+        final int cacheSize = this.configuration.getProperty("search.rightsFilter.cacheSize", 1000);
+        this.rightsFilters = new LinkedHashMap<String, RightsFilter>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RightsFilter> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+
+        final int responsesSize = this.configuration.getProperty("search.responseCache.size", 500);
+        this.responses = new LinkedHashMap<String, SearchResponse>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SearchResponse> eldest)
+            {
+                return size() > responsesSize;
+            }
+        };
+
         try {
             this.indexer = this.componentManager.getInstance(DocumentIndexer.class, SolrjDocumentIndexer.HINT);
             this.indexer.setSearchEngineObject(searchEngine.getSearchEngine());
@@ -92,7 +221,7 @@ public class SolrjSearch extends AbstractSearch
     @Override
     public String getImplementation()
     {
-        return "Embedded Solr";
+        return searchEngine instanceof RemoteSolrjSearchEngine ? "Remote Solr" : "Embedded Solr";
     }
 
     /**
@@ -113,6 +242,24 @@ public class SolrjSearch extends AbstractSearch
         return gson.toJson(indexer.getStatus());
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.Search#getCacheStatistics()
+     */
+    @Override
+    public Map<String, Long> getCacheStatistics()
+    {
+        Map<String, Long> statistics = new HashMap<String, Long>();
+        statistics.put("hits", this.cacheHits.get());
+        statistics.put("misses", this.cacheMisses.get());
+        statistics.put("invalidations", this.cacheInvalidations.get());
+        synchronized (this.responses) {
+            statistics.put("size", (long) this.responses.size());
+        }
+        return statistics;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -140,22 +287,31 @@ public class SolrjSearch extends AbstractSearch
             QueryResponse queryResponse;
             SolrjSearchResponse searchResponse;
             try {
-                StringBuilder queryString = new StringBuilder();
-                queryString.append(request.getQueryString());
+                SolrQuery solrQuery = ((SolrjSearchRequest) request).toSolrQuery();
+                long indexVersion = searchEngine.getIndexVersion();
+                RightsFilter rightsFilter = addRightsFilter(solrQuery, indexVersion);
+                logger.info("Query :" + solrQuery);
 
-                // Add filter parameters to query.
-                String filterParams = this.addFilterParameters(request.getFilterParametersMap());
-                queryString.append(filterParams);
-
-                String queryPostProcessing = request.processRequestQuery(queryString.toString());
-                logger.info("Query :" + queryPostProcessing);
-                SolrQuery solrQuery = this.getSolrQuery(queryPostProcessing, request);
+                // Hits are checked against the rights of the user, the language and the rights filter are part of
+                // the query.
+                String cacheKey = getXWikiContext().getDatabase() + ':' + getXWikiContext().getUser() + '|' + solrQuery;
+                response = getCachedResponse(cacheKey, indexVersion);
+                if (response != null) {
+                    this.cacheHits.incrementAndGet();
+                    return response;
+                }
+                this.cacheMisses.incrementAndGet();
 
                 solrserver = (SolrServer) searchEngine.getSearchEngine();
                 queryResponse = solrserver.query(solrQuery);
                 searchResponse = this.componentManager.getInstance(SearchResponse.class, SolrjSearchResponse.HINT);
+                searchResponse.setQuery(solrserver, solrQuery);
+                if (rightsFilter != null) {
+                    searchResponse.setRightsFilter(rightsFilter.wiki, rightsFilter.spaces);
+                }
                 searchResponse.processQueryResult(queryResponse);
                 logger.info("Returning search response : \n" + searchResponse);
+                putCachedResponse(cacheKey, indexVersion, searchResponse);
                 return searchResponse;
 
             } catch (Exception e) {
@@ -166,52 +322,110 @@ public class SolrjSearch extends AbstractSearch
     }
 
     /**
-     * @param queryPostProcessing query string
-     * @param request Search request.
-     * @return solr query.
+     * @param key the key of the response.
+     * @param indexVersion the current version of the index.
+     * @return the cached response, null if there is none for the current version of the index.
      */
-    private SolrQuery getSolrQuery(String queryPostProcessing, SearchRequest request)
+    private SearchResponse getCachedResponse(String key, long indexVersion)
     {
-        SolrQuery solrQuery = new SolrQuery(queryPostProcessing);
-        Map<String, String> searchParametersMap = request.getSearchParametersMap();
-        
-        // If query doesn't have language, Add a language filter query.
-        if (!queryPostProcessing.contains(DocumentField.LANGUAGE)) {
-            solrQuery.add("fq", "lang:" + getXWikiContext().getLanguage());
+        synchronized (this.responses) {
+            if (indexVersion != this.responsesVersion) {
+                if (!this.responses.isEmpty()) {
+                    this.responses.clear();
+                    this.cacheInvalidations.incrementAndGet();
+                }
+                this.responsesVersion = indexVersion;
+                return null;
+            }
+            return this.responses.get(key);
         }
+    }
 
+    /**
+     * @param key the key of the response.
+     * @param indexVersion the version of the index the response was computed from.
+     * @param response the response.
+     */
+    private void putCachedResponse(String key, long indexVersion, SearchResponse response)
+    {
+        synchronized (this.responses) {
+            if (indexVersion == this.responsesVersion) {
+                this.responses.put(key, response);
+            }
+        }
+    }
 
-        if (searchParametersMap != null && searchParametersMap.size() > 0) {
-            for (Entry<String, String> entry : searchParametersMap.entrySet()) {
-                if (entry.getKey().equals("qf") && !StringUtils.isEmpty(entry.getValue())) {
-                    String value = request.processQueryFrequency(entry.getValue());
-                    solrQuery.add(entry.getKey(), value);
-                } else {
-                    if (!StringUtils.isEmpty(entry.getValue())) {
-                        solrQuery.add(entry.getKey(), entry.getValue());
-                    }
-                }
+    /**
+     * Adds a filter query excluding the spaces of the current wiki the current user is not allowed to view. The filter
+     * is cached per user so that Solr can reuse it from its filterCache, until the index changes. The hits of the
+     * other wikis and of the spaces created since the filter was computed are not filtered and have to be checked one
+     * by one.
+     * 
+     * @param solrQuery the query.
+     * @param indexVersion the current version of the index.
+     * @return the rights filter added to the query, null if none.
+     */
+    private RightsFilter addRightsFilter(SolrQuery solrQuery, long indexVersion)
+    {
+        XWikiContext context = getXWikiContext();
+        String key = context.getDatabase() + ':' + context.getUser();
+        long now = System.currentTimeMillis();
 
+        RightsFilter rightsFilter;
+        synchronized (this.rightsFilters) {
+            rightsFilter = this.rightsFilters.get(key);
+        }
+        if (rightsFilter == null || rightsFilter.indexVersion != indexVersion || rightsFilter.expirationTime < now) {
+            try {
+                long cacheTime = this.configuration.getProperty("search.rightsFilter.cacheTime", 60000L);
+                rightsFilter = getRightsFilter(context, indexVersion, now + cacheTime);
+                synchronized (this.rightsFilters) {
+                    this.rightsFilters.put(key, rightsFilter);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to compute the rights filter of " + context.getUser(), e);
+                return null;
             }
-
         }
 
-        return solrQuery;
+        if (rightsFilter.filterQuery != null) {
+            solrQuery.addFilterQuery(rightsFilter.filterQuery);
+        }
+        return rightsFilter;
     }
 
     /**
-     * @param filterParametersMap filter map to be added to the query string.
-     * @return query string with filters.
+     * @param context the XWiki context.
+     * @param indexVersion the current version of the index.
+     * @param expirationTime time after which the filter has to be computed again.
+     * @return the filter excluding the spaces of the current wiki the current user is not allowed to view.
+     * @throws Exception if the rights can't be checked.
      */
-    private String addFilterParameters(Map<String, String> filterParametersMap)
+    private RightsFilter getRightsFilter(XWikiContext context, long indexVersion, long expirationTime)
+        throws Exception
     {
-        StringBuilder builder = new StringBuilder();
-        if (filterParametersMap != null) {
-            for (Entry<String, String> entry : filterParametersMap.entrySet()) {
-                builder.append(" " + entry.getKey() + ":" + entry.getValue());
+        String wiki = context.getDatabase();
+        XWikiRightService rightService = context.getWiki().getRightService();
+        List<String> spaces = context.getWiki().getSpaces(context);
+
+        StringBuilder deniedSpaces = new StringBuilder();
+        for (String space : spaces) {
+            String document = wiki + ':' + space + '.' + RIGHTS_CHECK_DOCUMENT;
+            if (!rightService.hasAccessLevel("view", context.getUser(), document, context)) {
+                if (deniedSpaces.length() > 0) {
+                    deniedSpaces.append(" OR ");
+                }
+                deniedSpaces.append(ClientUtils.escapeQueryChars(space));
             }
         }
-        return builder.toString();
+
+        String filterQuery = null;
+        if (deniedSpaces.length() > 0) {
+            filterQuery = "-(" + DocumentField.WIKI + ':' + ClientUtils.escapeQueryChars(wiki) + " AND "
+                + DocumentField.SPACE + ":(" + deniedSpaces + "))";
+        }
+        return new RightsFilter(wiki, Collections.unmodifiableSet(new HashSet<String>(spaces)), filterQuery,
+            indexVersion, expirationTime);
     }
 
     /**
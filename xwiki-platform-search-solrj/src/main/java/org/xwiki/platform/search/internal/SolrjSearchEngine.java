@@ -21,18 +21,34 @@ package org.xwiki.platform.search.internal;
 
 import groovy.lang.Singleton;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.platform.search.SearchEngine;
+import org.xwiki.platform.search.SearchException;
 
 /**
  * @version $Id$
@@ -52,6 +68,38 @@ public class SolrjSearchEngine implements SearchEngine, Initializable
      */
     public static final String HINT = "solrjsearchengine";
 
+    /**
+     * Property holding the hint of the search engine used by the solrj search and indexer, this embedded engine by
+     * default.
+     */
+    public static final String ENGINE_KEY = "search.solr.engine";
+
+    /**
+     * Suffix of the name of the core the index is rebuilt into.
+     */
+    private static final String REBUILD_CORE_SUFFIX = "-rebuild";
+
+    /**
+     * Property holding how the index is split into cores: <code>single</code> (the default) for a single core holding
+     * all the wikis, <code>wiki</code> for a core per wiki.
+     */
+    private static final String CORES_KEY = "search.solr.cores";
+
+    /**
+     * Value of {@link #CORES_KEY} giving each wiki its own core.
+     */
+    private static final String WIKI_CORES = "wiki";
+
+    /**
+     * Prefix of the names of the wiki cores.
+     */
+    private static final String WIKI_CORE_PREFIX = "wiki_";
+
+    /**
+     * Prefix of the names of the cores the wiki cores are rebuilt into.
+     */
+    private static final String REBUILD_WIKI_CORE_PREFIX = "rebuild_wiki_";
+
     /**
      * solrserver HINT.
      */
@@ -62,6 +110,16 @@ public class SolrjSearchEngine implements SearchEngine, Initializable
      */
     private static CoreContainer coreContainer;
 
+    /**
+     * Server routing the wikis to their cores, null when a single core holds all the wikis.
+     */
+    private static WikiCoresSolrServer wikiCoresServer;
+
+    /**
+     * Runs the queries fanned out to the wiki cores.
+     */
+    private static ExecutorService fanoutExecutor;
+
     /**
      * Logger component.
      */
@@ -75,6 +133,16 @@ public class SolrjSearchEngine implements SearchEngine, Initializable
     @Named("xwikiproperties")
     private ConfigurationSource configuration;
 
+    /**
+     * Names of the indexed fields, for {@link #indexFieldsVersion}.
+     */
+    private volatile Set<String> indexFields = Collections.emptySet();
+
+    /**
+     * Version of the index {@link #indexFields} was read from.
+     */
+    private volatile long indexFieldsVersion = -1;
+
     /**
      * {@inheritDoc}
      * 
@@ -95,7 +163,25 @@ public class SolrjSearchEngine implements SearchEngine, Initializable
             /* Initialize the SOLR backend using an embedded server */
             CoreContainer.Initializer initializer = new CoreContainer.Initializer();
             coreContainer = initializer.initialize();
-            solrServer = new EmbeddedSolrServer(coreContainer, "");
+            if (WIKI_CORES.equals(configuration.getProperty(CORES_KEY, "single"))) {
+                int threads =
+                    configuration.getProperty("search.solr.fanoutThreads", Runtime.getRuntime().availableProcessors());
+                fanoutExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "Solr wiki cores search");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                wikiCoresServer = createWikiCoresServer(WIKI_CORE_PREFIX);
+                solrServer = wikiCoresServer;
+                logger.info("Indexing each wiki in its own core");
+            } else {
+                solrServer = new EmbeddedSolrServer(coreContainer, "");
+            }
 
         } catch (Exception e) {
             logger.error("Failed to initialize the solr embedded server with solr.solr.home [" + solrHome + "] :: "
@@ -125,4 +211,207 @@ public class SolrjSearchEngine implements SearchEngine, Initializable
         return coreContainer;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getIndexFields()
+     */
+    @Override
+    public Set<String> getIndexFields()
+    {
+        if (coreContainer == null) {
+            return this.indexFields;
+        }
+
+        long version = getIndexVersion();
+        if (version != this.indexFieldsVersion) {
+            synchronized (this) {
+                if (version != this.indexFieldsVersion) {
+                    // The fields are read after the version so that they are at least as recent.
+                    Set<String> fields = new HashSet<String>();
+                    for (String name : getCoreNames()) {
+                        SolrCore core = coreContainer.getCore(name);
+                        if (core != null) {
+                            try {
+                                RefCounted<SolrIndexSearcher> searcher = core.getSearcher();
+                                try {
+                                    fields.addAll(searcher.get().getFieldNames());
+                                } finally {
+                                    searcher.decref();
+                                }
+                            } finally {
+                                core.close();
+                            }
+                        }
+                    }
+                    this.indexFields = Collections.unmodifiableSet(fields);
+                    this.indexFieldsVersion = version;
+                }
+            }
+        }
+        return this.indexFields;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With a core per wiki, the version is the sum of the versions of the cores, which changes whenever one of them
+     * does.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getIndexVersion()
+     */
+    @Override
+    public long getIndexVersion()
+    {
+        long version = -1;
+        if (coreContainer != null) {
+            for (String name : getCoreNames()) {
+                SolrCore core = coreContainer.getCore(name);
+                if (core != null) {
+                    try {
+                        RefCounted<SolrIndexSearcher> searcher = core.getSearcher();
+                        try {
+                            version = Math.max(version, 0) + searcher.get().getIndexReader().getVersion();
+                        } finally {
+                            searcher.decref();
+                        }
+                    } finally {
+                        core.close();
+                    }
+                }
+            }
+        }
+        return version;
+    }
+
+    /**
+     * @return the names of the cores holding the index.
+     */
+    private List<String> getCoreNames()
+    {
+        if (wikiCoresServer == null) {
+            return Collections.singletonList(coreContainer.getDefaultCoreName());
+        }
+        List<String> names = new ArrayList<String>();
+        for (String wiki : wikiCoresServer.getWikis()) {
+            names.add(wikiCoresServer.getCoreName(wiki));
+        }
+        return names;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The index is rebuilt into a second core of the core container, sharing the configuration of the default core.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#getRebuildSearchEngine()
+     */
+    @Override
+    public synchronized SolrServer getRebuildSearchEngine() throws SearchException
+    {
+        if (wikiCoresServer != null) {
+            // The rebuild cores are created when the first document of their wiki is indexed.
+            return createWikiCoresServer(REBUILD_WIKI_CORE_PREFIX);
+        }
+
+        String name = getRebuildCoreName();
+        if (!coreContainer.getCoreNames().contains(name)) {
+            SolrCore defaultCore = coreContainer.getCore(coreContainer.getDefaultCoreName());
+            try {
+                CoreDescriptor descriptor =
+                    new CoreDescriptor(coreContainer, name, defaultCore.getCoreDescriptor().getInstanceDir());
+                descriptor.setDataDir("data" + REBUILD_CORE_SUFFIX);
+                coreContainer.register(name, coreContainer.create(descriptor), false);
+                persist();
+                logger.info("Created the rebuild core [" + name + "]");
+            } catch (Exception e) {
+                throw new SearchException("Failed to create the rebuild core [" + name + "]", e);
+            } finally {
+                defaultCore.close();
+            }
+        }
+        return new EmbeddedSolrServer(coreContainer, name);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The servers keep addressing the cores by name, so they follow the swap.
+     * 
+     * @see org.xwiki.platform.search.SearchEngine#swapRebuildSearchEngine()
+     */
+    @Override
+    public synchronized void swapRebuildSearchEngine() throws SearchException
+    {
+        if (wikiCoresServer != null) {
+            swapWikiCores();
+            return;
+        }
+
+        String name = getRebuildCoreName();
+        if (!coreContainer.getCoreNames().contains(name)) {
+            throw new SearchException("There is no rebuild core [" + name + "] to swap");
+        }
+        coreContainer.swap(coreContainer.getDefaultCoreName(), name);
+        persist();
+        logger.info("Swapped the cores [" + coreContainer.getDefaultCoreName() + "] and [" + name + "]");
+    }
+
+    /**
+     * Swaps each wiki core with its rebuild core. A wiki missing from either side gets an empty core, so that the
+     * wikis which were not rebuilt are emptied and the rebuilt wikis are searchable.
+     * 
+     * @throws SearchException if a core can't be created.
+     */
+    private void swapWikiCores() throws SearchException
+    {
+        WikiCoresSolrServer rebuildServer = createWikiCoresServer(REBUILD_WIKI_CORE_PREFIX);
+        Set<String> wikis = new LinkedHashSet<String>(wikiCoresServer.getWikis());
+        wikis.addAll(rebuildServer.getWikis());
+        try {
+            for (String wiki : wikis) {
+                wikiCoresServer.getServer(wiki);
+                rebuildServer.getServer(wiki);
+                coreContainer.swap(wikiCoresServer.getCoreName(wiki), rebuildServer.getCoreName(wiki));
+            }
+        } catch (SolrServerException e) {
+            throw new SearchException("Failed to create a wiki core to swap", e);
+        }
+        persist();
+        logger.info("Swapped the cores of the wikis " + wikis + " with their rebuild cores");
+    }
+
+    /**
+     * @param corePrefix prefix of the names of the cores, followed by the wiki name.
+     * @return a server giving each wiki its own core.
+     */
+    private WikiCoresSolrServer createWikiCoresServer(String corePrefix)
+    {
+        SolrCore defaultCore = coreContainer.getCore(coreContainer.getDefaultCoreName());
+        try {
+            // The wiki cores share the configuration of the default core.
+            return new WikiCoresSolrServer(coreContainer, corePrefix, defaultCore.getCoreDescriptor()
+                .getInstanceDir(), fanoutExecutor);
+        } finally {
+            defaultCore.close();
+        }
+    }
+
+    /**
+     * @return the name of the core the index is rebuilt into.
+     */
+    private String getRebuildCoreName()
+    {
+        return coreContainer.getDefaultCoreName() + REBUILD_CORE_SUFFIX;
+    }
+
+    /**
+     * Saves the cores to solr.xml, so that the swapped cores are used after a restart.
+     */
+    private void persist()
+    {
+        if (coreContainer.isPersistent()) {
+            coreContainer.persist();
+        }
+    }
 }
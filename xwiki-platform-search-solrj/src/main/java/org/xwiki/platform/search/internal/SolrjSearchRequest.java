@@ -20,29 +20,40 @@
 package org.xwiki.platform.search.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.solr.common.params.ModifiableSolrParams;
-import org.apache.solr.common.util.NamedList;
-import org.apache.solr.common.util.SimpleOrderedMap;
-import org.apache.solr.core.CoreContainer;
-import org.apache.solr.core.SolrCore;
-import org.apache.solr.core.SolrInfoMBean;
-import org.apache.solr.handler.admin.LukeRequestHandler;
-import org.apache.solr.request.LocalSolrQueryRequest;
-import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.platform.search.DocumentField;
 import org.xwiki.platform.search.SearchEngine;
+import org.xwiki.platform.search.SearchQuery;
+import org.xwiki.platform.search.SearchQuery.Clause;
+import org.xwiki.platform.search.SearchQuery.Occur;
+import org.xwiki.platform.search.SearchRequest;
+import org.xwiki.platform.search.SearchResult;
 
 /**
  * @version $Id$
@@ -50,7 +61,7 @@ import org.xwiki.platform.search.SearchEngine;
 @Component
 @Named(SolrjSearchRequest.HINT)
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public class SolrjSearchRequest extends AbstractSearchRequest
+public class SolrjSearchRequest extends AbstractSearchRequest implements Initializable
 {
     /**
      * solrj HINT.
@@ -58,12 +69,74 @@ public class SolrjSearchRequest extends AbstractSearchRequest
     public static final String HINT = "solrj";
 
     /**
-     * SearchEngine component.
+     * Prefix of the properties configuring the search profiles, followed by the profile name and
+     * <code>.handler</code> for the request handler or <code>.params</code> for the default parameters, written as
+     * <code>name=value&amp;name=value</code>.
+     */
+    private static final String PROFILES_PREFIX = "search.profiles.";
+
+    /**
+     * Property naming the profile of the requests that don't select one, the API profile if not set. An empty value
+     * sends these requests to the <code>/select</code> handler.
+     */
+    private static final String DEFAULT_PROFILE = PROFILES_PREFIX + "default";
+
+    /**
+     * Request handlers of the built-in search profiles, declared in solrconfig.xml.
+     */
+    private static final Map<String, String> DEFAULT_HANDLERS = new HashMap<String, String>();
+
+    /**
+     * Matches a range filter value, e.g. <code>[* TO NOW]</code>.
+     */
+    private static final Pattern RANGE = Pattern.compile("^[\\[{].*\\sTO\\s.*[\\]}]$");
+
+    /**
+     * Finds an unescaped wildcard in a filter value, e.g. <code>Main*</code>.
+     */
+    private static final Pattern WILDCARD = Pattern.compile("(^|[^\\\\])[*?]");
+
+    static {
+        DEFAULT_HANDLERS.put(SearchRequest.QUICK_SEARCH_PROFILE, "/quicksearch");
+        DEFAULT_HANDLERS.put(SearchRequest.ADVANCED_SEARCH_PROFILE, "/advancedsearch");
+        DEFAULT_HANDLERS.put(SearchRequest.API_PROFILE, "/apisearch");
+        DEFAULT_HANDLERS.put(SearchRequest.ADMIN_PROFILE, "/select");
+    }
+
+    /**
+     * Component manager.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * Properties.
      */
     @Inject
-    @Named(SolrjSearchEngine.HINT)
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * SearchEngine component, selected by {@link SolrjSearchEngine#ENGINE_KEY}.
+     */
     private SearchEngine searchEngine;
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.component.phase.Initializable#initialize()
+     */
+    @Override
+    public void initialize() throws InitializationException
+    {
+        String engine = this.configuration.getProperty(SolrjSearchEngine.ENGINE_KEY, SolrjSearchEngine.HINT);
+        try {
+            this.searchEngine = this.componentManager.getInstance(SearchEngine.class, engine);
+        } catch (ComponentLookupException e) {
+            throw new InitializationException("Failed to lookup the [" + engine + "] search engine", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -71,104 +144,275 @@ public class SolrjSearchRequest extends AbstractSearchRequest
      */
     @Override
     public String processRequestQuery(String query)
+    {
+        fields = getFields();
+        return compileClauses(new SearchQuery().parse(query).getClauses(), getXWikiContext().getLanguage());
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchRequest#processQueryFrequency(java.lang.String)
+     */
+    public String processQueryFrequency(String qfString)
+    {
+        fields = getFields();
+        return compileBoosts(new SearchQuery().parseBoosts(qfString).getBoosts(), getXWikiContext().getLanguage());
+    }
+
+    /**
+     * Compiles the structured query of this request. The filters are sent as separate filter queries so that Solr can
+     * cache them independently of the user query.
+     * 
+     * @return the solr query.
+     */
+    public SolrQuery toSolrQuery()
     {
         fields = getFields();
         String language = getXWikiContext().getLanguage();
-        String lang = SEPERATOR + language;
-        String[] params = query.trim().split(" ");
-        Map<String, String> paramMap = new HashMap<String, String>();
-        for (String param : params) {
-            if (param.contains(COLON)) {
-                String[] pa = param.split(COLON);
-                String cleanField = pa[0].replaceAll("[+-]", "");
-                if (fields.contains(cleanField + lang)) {
-                    pa[0] = pa[0] + lang;
+        SearchQuery searchQuery = getQuery();
 
-                }
-                paramMap.put(pa[0], pa[1]);
-            } else {
-                paramMap.put(param, null);
+        String queryString = compileClauses(searchQuery.getClauses(), language);
+        SolrQuery solrQuery = new SolrQuery(StringUtils.isEmpty(queryString) ? "*:*" : queryString);
+
+        for (Clause filter : searchQuery.getFilters()) {
+            StringBuilder builder = new StringBuilder();
+            if (filter.getOccur() == Occur.MUST_NOT) {
+                builder.append('-');
             }
+            builder.append(getField(filter.getField(), language)).append(COLON);
+            builder.append(escapeFilterValue(filter.getValue()));
+            solrQuery.addFilterQuery(builder.toString());
         }
 
-        StringBuilder builder = new StringBuilder();
+        // If query doesn't have language, Add a language filter query.
+        if (!searchQuery.hasField(DocumentField.LANGUAGE)) {
+            solrQuery.addFilterQuery(DocumentField.LANGUAGE + COLON + language);
+        }
 
-        for (Entry<String, String> entry : paramMap.entrySet()) {
-            builder.append(entry.getKey());
-            if (!StringUtils.isEmpty(entry.getValue())) {
-                builder.append(COLON + entry.getValue());
+        String boosts = compileBoosts(searchQuery.getBoosts(), language);
+        if (!StringUtils.isEmpty(boosts)) {
+            solrQuery.set(QUERY_FIELDS, boosts);
+        }
+
+        // Only fetch the small stored fields the search results are read from, not the content of the hits.
+        if (!getSearchParametersMap().containsKey(CommonParams.FL)) {
+            solrQuery.set(CommonParams.FL, getFieldList(searchQuery, language));
+        }
+
+        if (isGrouped()) {
+            // The paging parameters then apply to the pages.
+            solrQuery.set(GroupParams.GROUP, true);
+            solrQuery.set(GroupParams.GROUP_FIELD, DocumentField.DOC_REFERENCE);
+            solrQuery.set(GroupParams.GROUP_LIMIT, this.configuration.getProperty("search.group.limit", 5));
+            solrQuery.set(GroupParams.GROUP_TOTAL_COUNT, true);
+        }
+
+        applyProfile(solrQuery);
+
+        for (Entry<String, String> entry : getSearchParametersMap().entrySet()) {
+            if (!QUERY_FIELDS.equals(entry.getKey()) && !StringUtils.isEmpty(entry.getValue())) {
+                solrQuery.add(entry.getKey(), entry.getValue());
             }
-            builder.append(" ");
         }
 
-        return builder.toString();
+        return solrQuery;
     }
 
     /**
-     * {@inheritDoc}
+     * Sets the request handler of the search profile and its default parameters, which override the computed ones but
+     * not the search parameters of the request. The requests without a profile use the default one, so that only the
+     * admin profile goes through the <code>/select</code> handler.
      * 
-     * @see org.xwiki.platform.search.SearchRequest#processQueryFrequency(java.lang.String)
+     * @param solrQuery the solr query.
      */
-    public String processQueryFrequency(String qfString)
+    void applyProfile(SolrQuery solrQuery)
     {
-        String[] qfArray = qfString.split(" ");
-        Map<String, String> qfMap = new HashMap<String, String>();
-        fields = getFields();
-        String language = getXWikiContext().getLanguage();
-        for (String qfItem : qfArray) {
-            if (qfItem.contains(BOOST_INDEX)) {
-                String[] qf = qfItem.split("\\^");
-                if (fields.contains(qf[0] + SEPERATOR + language)) {
-                    qfMap.put(qf[0] + SEPERATOR + language, qf[1]);
-                } else if (fields.contains(qf[0])) {
-                    qfMap.put(qf[0], qf[1]);
+        String profile = getProfile();
+        if (StringUtils.isEmpty(profile)) {
+            profile = this.configuration.getProperty(DEFAULT_PROFILE, SearchRequest.API_PROFILE);
+            if (StringUtils.isEmpty(profile)) {
+                return;
+            }
+        }
+
+        String prefix = PROFILES_PREFIX + profile;
+        String handler = this.configuration.getProperty(prefix + ".handler", DEFAULT_HANDLERS.get(profile));
+        if (StringUtils.isEmpty(handler)) {
+            logger.warn("Unknown search profile [" + profile + "], using the default handler");
+            return;
+        }
+        // Handlers starting with a slash are used as the request path.
+        solrQuery.setQueryType(handler);
+
+        String params = this.configuration.getProperty(prefix + ".params", "");
+        Map<String, List<String>> profileParams = new LinkedHashMap<String, List<String>>();
+        for (String param : params.split("&")) {
+            int index = param.indexOf('=');
+            if (index > 0) {
+                String name = param.substring(0, index).trim();
+                if (!profileParams.containsKey(name)) {
+                    profileParams.put(name, new ArrayList<String>());
                 }
+                profileParams.get(name).add(param.substring(index + 1).trim());
+            }
+        }
+        for (Entry<String, List<String>> entry : profileParams.entrySet()) {
+            if (!getSearchParametersMap().containsKey(entry.getKey())) {
+                solrQuery.set(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+            }
+        }
+    }
 
+    /**
+     * @param value the value of a filter.
+     * @return the value escaped for the query parser if it is a plain term, unchanged if it is a range or a wildcard.
+     */
+    static String escapeFilterValue(String value)
+    {
+        if (RANGE.matcher(value).matches() || WILDCARD.matcher(value).find()) {
+            return value;
+        }
+        return ClientUtils.escapeQueryChars(value);
+    }
+
+    /**
+     * @param searchQuery the structured query.
+     * @param language the language of the query.
+     * @return the value of the <code>fl</code> parameter, listing the stored fields of the needed search result
+     *         attributes.
+     */
+    private String getFieldList(SearchQuery searchQuery, String language)
+    {
+        // The localized fields of the hits are suffixed by their language, which is the language of the query unless
+        // the query searches other languages.
+        Set<String> hitLanguages = new LinkedHashSet<String>();
+        hitLanguages.add(language);
+        if (getLanguages() != null) {
+            hitLanguages.addAll(getLanguages());
+        }
+        for (Clause clause : searchQuery.getFilters()) {
+            if (DocumentField.LANGUAGE.equals(clause.getField()) && clause.getOccur() != Occur.MUST_NOT) {
+                hitLanguages.add(clause.getValue());
+            }
+        }
+        for (Clause clause : searchQuery.getClauses()) {
+            if (DocumentField.LANGUAGE.equals(clause.getField()) && clause.getOccur() != Occur.MUST_NOT) {
+                hitLanguages.add(clause.getValue());
             }
         }
 
+        Collection<String> attributes = getResultFields();
+        Set<String> fieldList =
+            new LinkedHashSet<String>(Arrays.asList(DocumentField.ID, DocumentField.TYPE, DocumentField.LANGUAGE,
+                DocumentField.WIKI, DocumentField.SPACE, DocumentField.RESTRICTED, DocumentField.SCORE));
+        addLocalizedField(fieldList, DocumentField.NAME, hitLanguages);
+        if (attributes == null || attributes.contains(SearchResult.TITLE)) {
+            addLocalizedField(fieldList, DocumentField.TITLE, hitLanguages);
+        }
+        if (attributes == null || attributes.contains(SearchResult.FILE_NAME)
+            || attributes.contains(SearchResult.URL)) {
+            addLocalizedField(fieldList, DocumentField.FILENAME, hitLanguages);
+        }
+        if (attributes == null || attributes.contains(SearchResult.MIME_TYPE)) {
+            fieldList.add(DocumentField.MIME_TYPE);
+        }
+        if (attributes == null || attributes.contains(SearchResult.OBJECT_NAME)) {
+            fieldList.add(DocumentField.OBJECT);
+        }
+        if (attributes == null || attributes.contains(SearchResult.PROPERTY_NAME)
+            || attributes.contains(SearchResult.PROPERTY_VALUE)) {
+            fieldList.add(DocumentField.PROPERTY_NAME);
+        }
+        if (attributes == null || attributes.contains(SearchResult.PROPERTY_VALUE)) {
+            fieldList.add(DocumentField.PROPERTY_VALUE);
+        }
+        return StringUtils.join(fieldList, ',');
+    }
+
+    /**
+     * @param fieldList the field list.
+     * @param field a localized field.
+     * @param hitLanguages the languages of the hits.
+     */
+    private void addLocalizedField(Set<String> fieldList, String field, Set<String> hitLanguages)
+    {
+        for (String hitLanguage : hitLanguages) {
+            fieldList.add(field + SEPERATOR + hitLanguage);
+        }
+    }
+
+    /**
+     * @param clauses the clauses of the query.
+     * @param language the language of the query.
+     * @return the solr query string.
+     */
+    private String compileClauses(List<Clause> clauses, String language)
+    {
         StringBuilder builder = new StringBuilder();
-        for (Entry<String, String> entry : qfMap.entrySet()) {
-            builder.append(entry.getKey());
-            if (entry.getValue() != null) {
-                builder.append(BOOST_INDEX + entry.getValue());
+        for (Clause clause : clauses) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            if (clause.getOccur() == Occur.MUST) {
+                builder.append('+');
+            } else if (clause.getOccur() == Occur.MUST_NOT) {
+                builder.append('-');
+            }
+            if (clause.getField() != null) {
+                builder.append(getField(clause.getField(), language)).append(COLON);
+            }
+            if (clause.isPhrase()) {
+                builder.append('"').append(clause.getValue().replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+            } else {
+                builder.append(clause.getValue());
             }
-            builder.append(" ");
         }
-
-        return builder.toString().trim();
+        return builder.toString();
     }
 
     /**
-     * @return List of Fields.
+     * @param boosts the boosts of the searched fields.
+     * @param language the language of the query.
+     * @return the value of the <code>qf</code> parameter, only containing indexed fields.
      */
-    private List<String> getFields()
+    private String compileBoosts(Map<String, Float> boosts, String language)
     {
-        CoreContainer container = (CoreContainer) searchEngine.getCoreContainer();
-        SolrCore core = null;
-        for (SolrCore c : container.getCores()) {
-            core = c;
-        }
-
-        Map<String, SolrInfoMBean> reg = core.getInfoRegistry();
-        LukeRequestHandler handler = (LukeRequestHandler) reg.get("/admin/luke");
-        LocalSolrQueryRequest req = new LocalSolrQueryRequest(core, new ModifiableSolrParams());
-        SolrQueryResponse response = new SolrQueryResponse();
-        handler.handleRequest(req, response);
-        NamedList list = response.getValues();
-
-        List<String> fieldsList = new ArrayList<String>();
-        for (Object obj : list.getAll("fields")) {
-            SimpleOrderedMap map = (SimpleOrderedMap) obj;
-            Iterator<Map.Entry<String, Object>> entries = map.iterator();
-            while (entries.hasNext()) {
-                Map.Entry<String, Object> entry = entries.next();
-                fieldsList.add(entry.getKey());
+        StringBuilder builder = new StringBuilder();
+        for (Entry<String, Float> entry : boosts.entrySet()) {
+            String field = entry.getKey() + SEPERATOR + language;
+            if (!fields.contains(field)) {
+                field = entry.getKey();
+                if (!fields.contains(field)) {
+                    continue;
+                }
+            }
+            if (builder.length() > 0) {
+                builder.append(' ');
             }
+            builder.append(field).append(BOOST_INDEX).append(entry.getValue());
         }
+        return builder.toString();
+    }
 
-        return fieldsList;
+    /**
+     * @param field a field of the query.
+     * @param language the language of the query.
+     * @return the language specific field if it is indexed, the field otherwise.
+     */
+    private String getField(String field, String language)
+    {
+        String languageField = field + SEPERATOR + language;
+        return fields.contains(languageField) ? languageField : field;
+    }
 
+    /**
+     * @return the names of the indexed fields.
+     */
+    private Set<String> getFields()
+    {
+        return searchEngine.getIndexFields();
     }
 
 }
@@ -29,6 +29,8 @@ import static org.xwiki.platform.search.DocumentField.NAME;
 import static org.xwiki.platform.search.DocumentField.OBJECT;
 import static org.xwiki.platform.search.DocumentField.OBJECT_CONTENT;
 import static org.xwiki.platform.search.DocumentField.PROPERTY_NAME;
+import static org.xwiki.platform.search.DocumentField.PROPERTY_VALUE;
+import static org.xwiki.platform.search.DocumentField.RESTRICTED;
 import static org.xwiki.platform.search.DocumentField.SCORE;
 import static org.xwiki.platform.search.DocumentField.SPACE;
 import static org.xwiki.platform.search.DocumentField.TITLE;
@@ -36,12 +38,19 @@ import static org.xwiki.platform.search.DocumentField.TYPE;
 import static org.xwiki.platform.search.DocumentField.WIKI;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
+import org.apache.solr.client.solrj.response.GroupResponse;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
@@ -50,13 +59,15 @@ import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.platform.search.SearchResponse;
 import org.xwiki.platform.search.SearchResult;
 
 /**
- * SearchResponse implementation.
+ * SearchResponse implementation. Only the window of documents returned by Solr is held, and its documents are converted
+ * to search results, which requires checking their existence and view rights, when they are first accessed.
  * 
  * @version $Id$
  */
@@ -92,9 +103,40 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
     private SolrDocumentList solrDocumentList;
 
     /**
-     * List of Search Results.
+     * Other hits of the page of the document at the same position of the current window, null if the hits are not
+     * grouped by page.
      */
-    private List<SearchResult> searchResults;
+    private List<List<SolrDocument>> groupMatches;
+
+    /**
+     * Search results of the documents of the current window, converted lazily.
+     */
+    private SearchResult[] searchResults;
+
+    /**
+     * Whether the document at the same position of the current window has been converted.
+     */
+    private boolean[] converted;
+
+    /**
+     * Solr server used to fetch other windows of results.
+     */
+    private SolrServer solrServer;
+
+    /**
+     * Query which returned the current window of results.
+     */
+    private SolrQuery solrQuery;
+
+    /**
+     * Wiki whose rights set on the wiki and on the spaces were filtered by the query, null if none.
+     */
+    private String rightsFilteredWiki;
+
+    /**
+     * Spaces of {@link #rightsFilteredWiki} whose view right was checked by the filter.
+     */
+    private Set<String> rightsFilteredSpaces = Collections.emptySet();
 
     /**
      * highlighted text.
@@ -107,6 +149,33 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /**
+     * ComponentManager component.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * @param solrServer the server the query was sent to.
+     * @param solrQuery the query which returned the response.
+     */
+    public void setQuery(SolrServer solrServer, SolrQuery solrQuery)
+    {
+        this.solrServer = solrServer;
+        this.solrQuery = solrQuery;
+    }
+
+    /**
+     * @param wiki the wiki whose rights set on the wiki and on the spaces were filtered by the query, in which case
+     *            only its hits of documents holding rights of their own or of other spaces are checked.
+     * @param spaces the spaces of the wiki whose view right was checked by the filter.
+     */
+    public void setRightsFilter(String wiki, Set<String> spaces)
+    {
+        this.rightsFilteredWiki = wiki;
+        this.rightsFilteredSpaces = spaces;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -165,10 +234,30 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
      * 
      * @see org.xwiki.platform.search.SearchResponse#getResults(int, int)
      */
-    public List<SearchResult> getResults(int beginIndex, int items)
+    public synchronized List<SearchResult> getResults(int beginIndex, int items)
     {
-        List<SearchResult> searchResultsSubList = this.searchResults.subList(beginIndex, beginIndex + items);
-        return searchResultsSubList;
+        if (this.solrDocumentList == null) {
+            return Collections.emptyList();
+        }
+
+        int offset = Math.max(beginIndex - 1, 0);
+        int end = (int) Math.min((long) offset + items, getTotalNumber());
+        if (offset >= end) {
+            return Collections.emptyList();
+        }
+
+        // Fetch the requested window if it is not the one held. The held window is left untouched since responses are
+        // shared through the search response cache.
+        if (offset < getWindowStart() || end > getWindowStart() + this.solrDocumentList.size()) {
+            SolrjSearchResponse window = getPage(offset, items);
+            if (window == null) {
+                return Collections.emptyList();
+            }
+            return window.getTotalResults();
+        }
+
+        int windowStart = getWindowStart();
+        return convertResults(offset - windowStart, end - windowStart);
     }
 
     /**
@@ -176,9 +265,106 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
      * 
      * @see org.xwiki.platform.search.SearchResponse#getTotalResults()
      */
-    public List<SearchResult> getTotalResults()
+    public synchronized List<SearchResult> getTotalResults()
+    {
+        if (this.solrDocumentList == null) {
+            return Collections.emptyList();
+        }
+        return convertResults(0, this.solrDocumentList.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.platform.search.SearchResponse#getNextPage()
+     */
+    @Override
+    public SearchResponse getNextPage()
+    {
+        if (this.solrDocumentList == null || this.solrServer == null || this.solrDocumentList.isEmpty()) {
+            return null;
+        }
+
+        int nextStart = getWindowStart() + this.solrDocumentList.size();
+        if (nextStart >= getTotalNumber()) {
+            return null;
+        }
+
+        return getPage(nextStart, this.solrDocumentList.size());
+    }
+
+    /**
+     * @return the offset of the first document of the current window in the whole result set.
+     */
+    private int getWindowStart()
+    {
+        return (int) this.solrDocumentList.getStart();
+    }
+
+    /**
+     * @param from position of the first document in the current window, inclusive.
+     * @param to position of the last document in the current window, exclusive.
+     * @return the search results of the documents the current user is allowed to view.
+     */
+    private List<SearchResult> convertResults(int from, int to)
+    {
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        for (int i = from; i < to; i++) {
+            if (!this.converted[i]) {
+                this.searchResults[i] = getSearchResult(this.solrDocumentList.get(i));
+                if (this.searchResults[i] != null && this.groupMatches != null) {
+                    addMatches(this.searchResults[i], this.groupMatches.get(i));
+                }
+                this.converted[i] = true;
+            }
+            if (this.searchResults[i] != null) {
+                results.add(this.searchResults[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The other hits of a page share the rights of its best hit, so they are not checked again.
+     * 
+     * @param searchResult the search result of the best hit of a page.
+     * @param matches the other hits of the page.
+     */
+    private void addMatches(SearchResult searchResult, List<SolrDocument> matches)
+    {
+        for (SolrDocument match : matches) {
+            try {
+                searchResult.addMatch(createSearchResult(match));
+            } catch (Exception e) {
+                logger.info("Error while retieving search result" + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @param start offset of the first document to fetch.
+     * @param rows number of documents to fetch.
+     * @return a new response holding the requested window, null if it can't be fetched.
+     */
+    private SolrjSearchResponse getPage(int start, int rows)
     {
-        return this.searchResults;
+        if (this.solrServer == null || this.solrQuery == null) {
+            return null;
+        }
+
+        SolrQuery pageQuery = this.solrQuery.getCopy();
+        pageQuery.setStart(start);
+        pageQuery.setRows(rows);
+        try {
+            SolrjSearchResponse page = this.componentManager.getInstance(SearchResponse.class, HINT);
+            page.setQuery(this.solrServer, pageQuery);
+            page.setRightsFilter(this.rightsFilteredWiki, this.rightsFilteredSpaces);
+            page.processQueryResult(this.solrServer.query(pageQuery));
+            return page;
+        } catch (Exception e) {
+            logger.error("Failed to fetch search results from " + start, e);
+        }
+        return null;
     }
 
     /**
@@ -267,46 +453,24 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
      */
     private SearchResult getSearchResult(SolrDocument solrDoc)
     {
-        SearchResult searchResult = null;
-
         try {
+            SearchResult searchResult = createSearchResult(solrDoc);
 
-            String language = (String) solrDoc.getFieldValue(LANGUAGE);
-            String type = (String) solrDoc.getFieldValue(TYPE);
-
-            String id = getStringValue(solrDoc.getFieldValue(ID));
-            String wikiName = getStringValue(solrDoc.getFieldValue(WIKI));
-            String spaceName = getStringValue(solrDoc.getFieldValue(SPACE));
-            String pageName = getStringValue(solrDoc.getFieldValue(NAME + USCORE + language));
-            DocumentReference docref = new DocumentReference(wikiName, spaceName, pageName, language);
-
-            searchResult = new SearchResult(id, wikiName, spaceName, pageName, language);
-            searchResult.setType(type);
-            Map<String, List<String>> docMap = this.highlightingMap.get(id);
-
-            if ("DOCUMENT".equals(type)) {
-                this.processDocumentResponse(searchResult, docMap, solrDoc, language);
-            } else if ("ATTACHMENT".equals(type)) {
-                this.processAttachmentResponse(searchResult, docMap, solrDoc, language, docref);
-
-            } else if ("OBJECT".equals(type)) {
-                // Hightlight text/content
-                if (docMap != null && docMap.containsKey(OBJECT_CONTENT + USCORE + language)) {
-                    searchResult.setHighlightText(cleanUp(docMap.get(OBJECT_CONTENT + USCORE + language).toString()));
-                }
-                searchResult.setObjectName(getStringValue(solrDoc.getFieldValue(OBJECT)));
-
-            } else if ("PROPERTY".equals(type)) {
-                String propertyName = getStringValue(solrDoc.getFieldValue(PROPERTY_NAME));
-                searchResult.setPropertyName(propertyName);
-                searchResult.setPropertyValue(getStringValue(solrDoc.getFieldValue(propertyName)));
+            // The index can still hold documents deleted since they were indexed.
+            DocumentReference docref = searchResult.getReference();
+            if (!documentAccessBridge.exists(docref)) {
+                return null;
             }
 
-            float score = (Float) solrDoc.getFieldValue(SCORE);
-            searchResult.setScore(score);
+            // Documents of the filtered spaces without rights of their own have already been filtered by the query.
+            if (searchResult.getWikiName().equals(this.rightsFilteredWiki)
+                && this.rightsFilteredSpaces.contains(searchResult.getSpaceName())
+                && Boolean.FALSE.equals(solrDoc.getFieldValue(RESTRICTED))) {
+                return searchResult;
+            }
 
             // checks if the user has access to view the page.
-            if ((documentAccessBridge.exists(docref)) && (documentAccessBridge.isDocumentViewable(docref))) {
+            if (documentAccessBridge.isDocumentViewable(docref)) {
                 return searchResult;
             }
 
@@ -317,6 +481,48 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
         return null;
     }
 
+    /**
+     * @param solrDoc Solr Dcument.
+     * @return the search result of the document, without checking the rights of the current user.
+     */
+    private SearchResult createSearchResult(SolrDocument solrDoc)
+    {
+        String language = (String) solrDoc.getFieldValue(LANGUAGE);
+        String type = (String) solrDoc.getFieldValue(TYPE);
+
+        String id = getStringValue(solrDoc.getFieldValue(ID));
+        String wikiName = getStringValue(solrDoc.getFieldValue(WIKI));
+        String spaceName = getStringValue(solrDoc.getFieldValue(SPACE));
+        String pageName = getStringValue(solrDoc.getFieldValue(NAME + USCORE + language));
+        DocumentReference docref = new DocumentReference(wikiName, spaceName, pageName, language);
+
+        SearchResult searchResult = new SearchResult(id, wikiName, spaceName, pageName, language);
+        searchResult.setType(type);
+        Map<String, List<String>> docMap = this.highlightingMap != null ? this.highlightingMap.get(id) : null;
+
+        if ("DOCUMENT".equals(type)) {
+            this.processDocumentResponse(searchResult, docMap, solrDoc, language);
+        } else if ("ATTACHMENT".equals(type)) {
+            this.processAttachmentResponse(searchResult, docMap, solrDoc, language, docref);
+
+        } else if ("OBJECT".equals(type)) {
+            // Hightlight text/content
+            if (docMap != null && docMap.containsKey(OBJECT_CONTENT + USCORE + language)) {
+                searchResult.setHighlightText(cleanUp(docMap.get(OBJECT_CONTENT + USCORE + language).toString()));
+            }
+            searchResult.setObjectName(getStringValue(solrDoc.getFieldValue(OBJECT)));
+
+        } else if ("PROPERTY".equals(type)) {
+            searchResult.setPropertyName(getStringValue(solrDoc.getFieldValue(PROPERTY_NAME)));
+            searchResult.setPropertyValue(getStringValue(solrDoc.getFieldValue(PROPERTY_VALUE)));
+        }
+
+        float score = (Float) solrDoc.getFieldValue(SCORE);
+        searchResult.setScore(score);
+
+        return searchResult;
+    }
+
     /**
      * @param searchResult SearchResult.
      * @param docMap highlight map.
@@ -334,9 +540,12 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
 
         String fileName = getStringValue(solrDoc.getFieldValue(FILENAME + USCORE + language));
         searchResult.setFileName(fileName);
-        AttachmentReference attachmentReference = new AttachmentReference(fileName, docref);
-        String url = documentAccessBridge.getAttachmentURL(attachmentReference, true);
-        searchResult.setURL(url);
+        // The file name is not fetched when neither it nor the URL are needed.
+        if (!fileName.isEmpty()) {
+            AttachmentReference attachmentReference = new AttachmentReference(fileName, docref);
+            String url = documentAccessBridge.getAttachmentURL(attachmentReference, true);
+            searchResult.setURL(url);
+        }
         searchResult.setMimeType(getStringValue(solrDoc.getFieldValue(MIME_TYPE)));
 
     }
@@ -375,20 +584,46 @@ public class SolrjSearchResponse extends DocumentHelper implements SearchRespons
             this.queryResponse = (QueryResponse) queryResponse;
         }
 
-        this.solrDocumentList = this.queryResponse.getResults();
+        GroupResponse groupResponse = this.queryResponse.getGroupResponse();
+        if (groupResponse != null && !groupResponse.getValues().isEmpty()) {
+            processGroups(groupResponse.getValues().get(0));
+        } else {
+            this.solrDocumentList = this.queryResponse.getResults();
+            this.groupMatches = null;
+        }
         this.highlightingMap = this.queryResponse.getHighlighting();
 
-        this.searchResults = new ArrayList<SearchResult>();
+        // Results are converted when accessed.
+        int size = this.solrDocumentList != null ? this.solrDocumentList.size() : 0;
+        this.searchResults = new SearchResult[size];
+        this.converted = new boolean[size];
+    }
 
-        if (solrDocumentList != null) {
-            for (SolrDocument solrDoc : solrDocumentList) {
-                SearchResult searchResult = this.getSearchResult(solrDoc);
-                // && !isDocumentInParentEntity(searchResult.getReference(), entityReference)
-                // && languages.contains(searchResult.getLanguage())
-                if (searchResult != null) {
-                    this.searchResults.add(searchResult);
+    /**
+     * Keeps the best hit of each page in the window of documents, the paging parameters of a grouped query applying to
+     * the pages.
+     * 
+     * @param command the groups of the hits by page.
+     */
+    private void processGroups(GroupCommand command)
+    {
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.setNumFound(command.getNGroups() != null ? command.getNGroups() : command.getValues().size());
+        documents.setStart(this.solrQuery != null && this.solrQuery.getStart() != null ? this.solrQuery.getStart() : 0);
+        this.groupMatches = new ArrayList<List<SolrDocument>>();
+
+        float maxScore = 0;
+        for (Group group : command.getValues()) {
+            SolrDocumentList hits = group.getResult();
+            if (hits != null && !hits.isEmpty()) {
+                documents.add(hits.get(0));
+                this.groupMatches.add(hits.subList(1, hits.size()));
+                if (hits.getMaxScore() != null) {
+                    maxScore = Math.max(maxScore, hits.getMaxScore());
                 }
             }
         }
+        documents.setMaxScore(maxScore);
+        this.solrDocumentList = documents;
     }
 }
@@ -70,9 +70,11 @@ public class VelocityUtils
     {
         this.coreContainer = coreContainer;
         this.solrServer = solrServer;
-        // Embedded XWiki runs on a single core.
-        for (SolrCore c : coreContainer.getCores()) {
-            this.core = c;
+        // Embedded XWiki runs on a single core. There is no core in this JVM with a remote Solr.
+        if (coreContainer != null) {
+            for (SolrCore c : coreContainer.getCores()) {
+                this.core = c;
+            }
         }
     }
 
@@ -81,6 +83,9 @@ public class VelocityUtils
      */
     public NamedList getIndexingStatistics()
     {
+        if (this.core == null) {
+            return null;
+        }
         RefCounted<SolrIndexSearcher> searcher = core.getSearcher();
         searcher.decref();
 
@@ -95,6 +100,9 @@ public class VelocityUtils
      */
     private NamedList getStatistics(String key)
     {
+        if (this.core == null) {
+            return null;
+        }
         Map<String, SolrInfoMBean> reg = this.core.getInfoRegistry();
         LocalSolrQueryRequest req = new LocalSolrQueryRequest(core, new ModifiableSolrParams());
         SolrQueryResponse response = new SolrQueryResponse();
@@ -0,0 +1,820 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.xwiki.platform.search.DocumentField;
+
+/**
+ * Gives each wiki its own core of the core container, created when the first document of the wiki is indexed. The
+ * updates are routed to the core of their wiki and the queries are sent in parallel to the cores of all the wikis, or
+ * only to the core of the wiki they filter on, the results being merged by score or by the sort fields. The
+ * commits only reach the cores updated since their last commit.
+ * 
+ * @version $Id$
+ */
+public class WikiCoresSolrServer extends SolrServer
+{
+    /**
+     * Class version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Name of the response entry holding the documents.
+     */
+    private static final String RESPONSE = "response";
+
+    /**
+     * Name of the response entry holding the highlighted snippets.
+     */
+    private static final String HIGHLIGHTING = "highlighting";
+
+    /**
+     * Name of the response entry holding the response header.
+     */
+    private static final String RESPONSE_HEADER = "responseHeader";
+
+    /**
+     * Name of the response entry holding the groups of documents, by grouping field.
+     */
+    private static final String GROUPED = "grouped";
+
+    /**
+     * Name of the entry holding the groups of a grouping field.
+     */
+    private static final String GROUPS = "groups";
+
+    /**
+     * Name of the entry holding the documents of a group.
+     */
+    private static final String DOCLIST = "doclist";
+
+    /**
+     * Name of the score pseudo field.
+     */
+    private static final String SCORE = "score";
+
+    /**
+     * Name of the response entry holding the facet counts.
+     */
+    private static final String FACET_COUNTS = "facet_counts";
+
+    /**
+     * Name of the entry holding the counts of the facet fields.
+     */
+    private static final String FACET_FIELDS = "facet_fields";
+
+    /**
+     * Name of the entry holding the counts of the facet queries.
+     */
+    private static final String FACET_QUERIES = "facet_queries";
+
+    /**
+     * Default maximum number of values returned for a facet field.
+     */
+    private static final int DEFAULT_FACET_LIMIT = 100;
+
+    /**
+     * Separator of the parts of the document ids, which start with the wiki name.
+     */
+    private static final char ID_SEPARATOR = '.';
+
+    /**
+     * Matches a filter query restricting the results to a single wiki.
+     */
+    private static final Pattern WIKI_FILTER = Pattern.compile("^\\+?" + DocumentField.WIKI
+        + ":((?:\\\\.|[^\\s\\\\()])+)$");
+
+    /**
+     * Matches a delete query restricted to a single wiki, such as the ones deleting the index of a wiki or a space.
+     */
+    private static final Pattern WIKI_DELETE_QUERY = Pattern.compile("^\\+?" + DocumentField.WIKI
+        + ":((?:\\\\.|[^\\s\\\\()])+)(?:\\s+AND\\s+.*)?$");
+
+    /**
+     * A clause of the sort parameter of a query.
+     */
+    private static class SortClause
+    {
+        /**
+         * The sorted field.
+         */
+        private final String field;
+
+        /**
+         * Whether the documents are sorted in descending order.
+         */
+        private final boolean descending;
+
+        /**
+         * @param field the sorted field.
+         * @param descending whether the documents are sorted in descending order.
+         */
+        SortClause(String field, boolean descending)
+        {
+            this.field = field;
+            this.descending = descending;
+        }
+    }
+
+    /**
+     * Holds the cores.
+     */
+    private final transient CoreContainer coreContainer;
+
+    /**
+     * Prefix of the names of the cores, followed by the wiki name.
+     */
+    private final String corePrefix;
+
+    /**
+     * Instance directory of the created cores, holding their configuration.
+     */
+    private final String instanceDir;
+
+    /**
+     * Runs the queries on the cores.
+     */
+    private final transient ExecutorService executor;
+
+    /**
+     * Servers of the cores, by wiki.
+     */
+    private final transient Map<String, EmbeddedSolrServer> servers =
+        new ConcurrentHashMap<String, EmbeddedSolrServer>();
+
+    /**
+     * Wikis whose core received updates since its last commit.
+     */
+    private final transient Set<String> dirtyWikis =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param coreContainer holds the cores.
+     * @param corePrefix prefix of the names of the cores, followed by the wiki name.
+     * @param instanceDir instance directory of the created cores, holding their configuration.
+     * @param executor runs the queries on the cores.
+     */
+    public WikiCoresSolrServer(CoreContainer coreContainer, String corePrefix, String instanceDir,
+        ExecutorService executor)
+    {
+        this.coreContainer = coreContainer;
+        this.corePrefix = corePrefix;
+        this.instanceDir = instanceDir;
+        this.executor = executor;
+    }
+
+    /**
+     * @param wiki a wiki.
+     * @return the name of the core of the wiki.
+     */
+    public String getCoreName(String wiki)
+    {
+        return this.corePrefix + wiki.toLowerCase();
+    }
+
+    /**
+     * @return the wikis having a core, lower case.
+     */
+    public List<String> getWikis()
+    {
+        List<String> wikis = new ArrayList<String>();
+        for (String name : this.coreContainer.getCoreNames()) {
+            if (name.startsWith(this.corePrefix)) {
+                wikis.add(name.substring(this.corePrefix.length()));
+            }
+        }
+        return wikis;
+    }
+
+    /**
+     * @param wiki a wiki.
+     * @return the server of the core of the wiki, created if needed.
+     * @throws SolrServerException if the core can't be created.
+     */
+    public EmbeddedSolrServer getServer(String wiki) throws SolrServerException
+    {
+        String key = wiki.toLowerCase();
+        EmbeddedSolrServer server = this.servers.get(key);
+        if (server == null) {
+            synchronized (this.coreContainer) {
+                String name = getCoreName(key);
+                if (!this.coreContainer.getCoreNames().contains(name)) {
+                    try {
+                        CoreDescriptor descriptor = new CoreDescriptor(this.coreContainer, name, this.instanceDir);
+                        descriptor.setDataDir("data-" + name);
+                        this.coreContainer.register(name, this.coreContainer.create(descriptor), false);
+                        if (this.coreContainer.isPersistent()) {
+                            this.coreContainer.persist();
+                        }
+                    } catch (Exception e) {
+                        throw new SolrServerException("Failed to create the core [" + name + "]", e);
+                    }
+                }
+                server = new EmbeddedSolrServer(this.coreContainer, name);
+                this.servers.put(key, server);
+            }
+        }
+        return server;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.apache.solr.client.solrj.SolrServer#request(org.apache.solr.client.solrj.SolrRequest)
+     */
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException
+    {
+        if (request instanceof UpdateRequest) {
+            return update((UpdateRequest) request);
+        } else if (request instanceof QueryRequest) {
+            return query(request);
+        }
+
+        // Administration requests are answered by any core.
+        List<String> wikis = getWikis();
+        if (wikis.isEmpty()) {
+            return new NamedList<Object>();
+        }
+        return getServer(wikis.get(0)).request(request);
+    }
+
+    /**
+     * Sends the documents and the deletions by id to the core of their wiki, the deletions by query restricted to a
+     * wiki to the core of that wiki and the other ones to all the cores. The commits and the rollbacks are sent to the
+     * cores updated since their last commit, the optimizations to all the cores.
+     * 
+     * @param request an update request.
+     * @return the response of the last core.
+     * @throws SolrServerException if an update fails.
+     * @throws IOException if an update fails.
+     */
+    private NamedList<Object> update(UpdateRequest request) throws SolrServerException, IOException
+    {
+        Map<String, UpdateRequest> requests = new LinkedHashMap<String, UpdateRequest>();
+
+        if (request.getDocuments() != null) {
+            for (SolrInputDocument document : request.getDocuments()) {
+                Object wiki = document.getFieldValue(DocumentField.WIKI);
+                if (wiki == null) {
+                    wiki = getWiki((String) document.getFieldValue(DocumentField.ID));
+                }
+                getRequest(requests, String.valueOf(wiki).toLowerCase(), request).add(document);
+            }
+        }
+        if (request.getDeleteById() != null) {
+            for (String id : request.getDeleteById()) {
+                getRequest(requests, getWiki(id), request).deleteById(id);
+            }
+        }
+        if (request.getDeleteQuery() != null) {
+            List<String> wikis = getWikis();
+            for (String query : request.getDeleteQuery()) {
+                Matcher matcher = WIKI_DELETE_QUERY.matcher(query.trim());
+                if (matcher.matches()) {
+                    // Nothing to delete if the wiki has no core.
+                    String wiki = matcher.group(1).replaceAll("\\\\(.)", "$1").toLowerCase();
+                    if (wikis.contains(wiki)) {
+                        getRequest(requests, wiki, request).deleteByQuery(query);
+                    }
+                } else {
+                    for (String wiki : wikis) {
+                        getRequest(requests, wiki, request).deleteByQuery(query);
+                    }
+                }
+            }
+        }
+
+        SolrParams params = request.getParams();
+        boolean commit = params != null
+            && (params.getBool(UpdateParams.COMMIT, false) || params.getBool(UpdateParams.ROLLBACK, false));
+        if (params != null && params.getBool(UpdateParams.OPTIMIZE, false)) {
+            for (String wiki : getWikis()) {
+                getRequest(requests, wiki, request);
+            }
+        } else if (commit) {
+            for (String wiki : this.dirtyWikis) {
+                getRequest(requests, wiki, request);
+            }
+        }
+
+        NamedList<Object> response = new NamedList<Object>();
+        for (Map.Entry<String, UpdateRequest> entry : requests.entrySet()) {
+            String wiki = entry.getKey();
+            UpdateRequest wikiRequest = entry.getValue();
+            if (commit) {
+                // Removed before the commit so that the updates sent meanwhile get committed later.
+                this.dirtyWikis.remove(wiki);
+                try {
+                    response = getServer(wiki).request(wikiRequest);
+                } catch (SolrServerException e) {
+                    this.dirtyWikis.add(wiki);
+                    throw e;
+                } catch (IOException e) {
+                    this.dirtyWikis.add(wiki);
+                    throw e;
+                } catch (RuntimeException e) {
+                    this.dirtyWikis.add(wiki);
+                    throw e;
+                }
+            } else {
+                response = getServer(wiki).request(wikiRequest);
+                // Marked after the update so that a concurrent commit doesn't forget it.
+                if (wikiRequest.getDocuments() != null || wikiRequest.getDeleteById() != null
+                    || wikiRequest.getDeleteQuery() != null) {
+                    this.dirtyWikis.add(wiki);
+                }
+            }
+        }
+        return response;
+    }
+
+    /**
+     * @param requests the update requests, by wiki.
+     * @param wiki a wiki, lower case.
+     * @param request the routed request.
+     * @return the update request of the wiki, created with the parameters of the routed request if needed.
+     */
+    private UpdateRequest getRequest(Map<String, UpdateRequest> requests, String wiki, UpdateRequest request)
+    {
+        UpdateRequest wikiRequest = requests.get(wiki);
+        if (wikiRequest == null) {
+            wikiRequest = new UpdateRequest(request.getPath());
+            wikiRequest.setParams(new ModifiableSolrParams(request.getParams()));
+            wikiRequest.setCommitWithin(request.getCommitWithin());
+            requests.put(wiki, wikiRequest);
+        }
+        return wikiRequest;
+    }
+
+    /**
+     * @param id the id of a document in the index.
+     * @return the wiki of the document, lower case.
+     */
+    private String getWiki(String id)
+    {
+        int index = id.indexOf(ID_SEPARATOR);
+        return index > 0 ? id.substring(0, index) : id;
+    }
+
+    /**
+     * Runs a query on the cores of the wikis it may match.
+     * 
+     * @param request a query request.
+     * @return the merged response.
+     * @throws SolrServerException if a query fails.
+     * @throws IOException if a query fails.
+     */
+    private NamedList<Object> query(SolrRequest request) throws SolrServerException, IOException
+    {
+        SolrParams params = request.getParams();
+        String wiki = getFilteredWiki(params);
+        List<String> wikis = wiki != null ? Collections.singletonList(wiki) : getWikis();
+        if (wikis.isEmpty()) {
+            wikis = Collections.singletonList(wiki);
+        }
+        if (wikis.size() == 1 && wikis.get(0) != null) {
+            return getServer(wikis.get(0)).request(request);
+        } else if (wikis.get(0) == null) {
+            return emptyResponse(params);
+        }
+
+        // Each core returns its best documents up to the end of the requested window.
+        int start = params.getInt(CommonParams.START, 0);
+        int rows = params.getInt(CommonParams.ROWS, 10);
+        final ModifiableSolrParams coreParams = new ModifiableSolrParams(params);
+        coreParams.set(CommonParams.START, 0);
+        coreParams.set(CommonParams.ROWS, start + rows);
+        // The documents are merged on the values of the sort fields, which have to be returned.
+        List<SortClause> sortClauses = getSortClauses(params.get(CommonParams.SORT));
+        String fl = params.get(CommonParams.FL);
+        StringBuilder coreFl = new StringBuilder(fl == null ? "*" : fl);
+        List<String> returnedFields = fl == null ? new ArrayList<String>() : Arrays.asList(fl.trim().split("[\\s,]+"));
+        if (!returnedFields.contains(SCORE)) {
+            coreFl.append(',').append(SCORE);
+        }
+        for (SortClause sortClause : sortClauses) {
+            if (fl != null && !returnedFields.contains(sortClause.field) && !SCORE.equals(sortClause.field)) {
+                coreFl.append(',').append(sortClause.field);
+            }
+        }
+        coreParams.set(CommonParams.FL, coreFl.toString());
+        // Each core counts the facet values up to the end of the requested window as well.
+        int facetOffset = params.getInt(FacetParams.FACET_OFFSET, 0);
+        if (facetOffset > 0) {
+            int facetLimit = params.getInt(FacetParams.FACET_LIMIT, DEFAULT_FACET_LIMIT);
+            coreParams.set(FacetParams.FACET_OFFSET, 0);
+            coreParams.set(FacetParams.FACET_LIMIT, facetLimit < 0 ? facetLimit : facetOffset + facetLimit);
+        }
+
+        List<Future<NamedList<Object>>> futures = new ArrayList<Future<NamedList<Object>>>();
+        for (String coreWiki : wikis) {
+            final EmbeddedSolrServer server = getServer(coreWiki);
+            final SolrRequest.METHOD method = request.getMethod();
+            final String path = request.getPath();
+            futures.add(this.executor.submit(new Callable<NamedList<Object>>()
+            {
+                @Override
+                public NamedList<Object> call() throws Exception
+                {
+                    QueryRequest coreRequest = new QueryRequest(coreParams, method);
+                    coreRequest.setPath(path);
+                    return server.request(coreRequest);
+                }
+            }));
+        }
+
+        List<NamedList<Object>> responses = new ArrayList<NamedList<Object>>();
+        try {
+            for (Future<NamedList<Object>> future : futures) {
+                responses.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while querying the wiki cores", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SolrServerException) {
+                throw (SolrServerException) e.getCause();
+            }
+            throw new SolrServerException("Failed to query the wiki cores", e.getCause());
+        } finally {
+            for (Future<NamedList<Object>> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return merge(responses, start, rows, sortClauses, params);
+    }
+
+    /**
+     * @param params the parameters of a query.
+     * @return the wiki the query filters on, lower case, null if it is not restricted to a single wiki.
+     */
+    private String getFilteredWiki(SolrParams params)
+    {
+        String[] filters = params.getParams(CommonParams.FQ);
+        if (filters != null) {
+            for (String filter : filters) {
+                Matcher matcher = WIKI_FILTER.matcher(filter.trim());
+                if (matcher.matches()) {
+                    return matcher.group(1).replaceAll("\\\\(.)", "$1").toLowerCase();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param params the parameters of a query.
+     * @return the response of a query matching no document.
+     */
+    private NamedList<Object> emptyResponse(SolrParams params)
+    {
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.setStart(params.getInt(CommonParams.START, 0));
+        NamedList<Object> response = new NamedList<Object>();
+        response.add(RESPONSE_HEADER, new NamedList<Object>());
+        response.add(RESPONSE, documents);
+        return response;
+    }
+
+    /**
+     * @param responses the responses of the cores.
+     * @param start index of the first document to return.
+     * @param rows number of documents to return.
+     * @param sortClauses the sort clauses of the query.
+     * @param params the parameters of the query.
+     * @return the response holding the requested window of the merged documents and the summed facet counts.
+     */
+    @SuppressWarnings("unchecked")
+    private NamedList<Object> merge(List<NamedList<Object>> responses, int start, int rows,
+        List<SortClause> sortClauses, SolrParams params)
+    {
+        List<SolrDocument> documents = new ArrayList<SolrDocument>();
+        NamedList<Object> highlighting = new NamedList<Object>();
+        boolean hasDocuments = false;
+        long numFound = 0;
+        Float maxScore = null;
+        for (NamedList<Object> response : responses) {
+            SolrDocumentList coreDocuments = (SolrDocumentList) response.get(RESPONSE);
+            if (coreDocuments != null) {
+                hasDocuments = true;
+                numFound += coreDocuments.getNumFound();
+                if (coreDocuments.getMaxScore() != null
+                    && (maxScore == null || coreDocuments.getMaxScore() > maxScore)) {
+                    maxScore = coreDocuments.getMaxScore();
+                }
+                documents.addAll(coreDocuments);
+            }
+            NamedList<Object> coreHighlighting = (NamedList<Object>) response.get(HIGHLIGHTING);
+            if (coreHighlighting != null) {
+                // The document ids start with the wiki name so they don't clash.
+                highlighting.addAll(coreHighlighting);
+            }
+        }
+
+        Comparator<SolrDocument> comparator = getComparator(sortClauses);
+        Collections.sort(documents, comparator);
+
+        SolrDocumentList merged = new SolrDocumentList();
+        merged.setNumFound(numFound);
+        merged.setStart(start);
+        merged.setMaxScore(maxScore);
+        for (int i = start; i < Math.min(start + rows, documents.size()); i++) {
+            merged.add(documents.get(i));
+        }
+
+        NamedList<Object> response = new NamedList<Object>();
+        response.add(RESPONSE_HEADER, responses.get(0).get(RESPONSE_HEADER));
+        if (hasDocuments) {
+            response.add(RESPONSE, merged);
+        }
+        NamedList<Object> grouped = mergeGroups(responses, start, rows, comparator);
+        if (grouped.size() > 0) {
+            response.add(GROUPED, grouped);
+        }
+        if (highlighting.size() > 0) {
+            response.add(HIGHLIGHTING, highlighting);
+        }
+        NamedList<Object> facetCounts = mergeFacets(responses, params);
+        if (facetCounts != null) {
+            response.add(FACET_COUNTS, facetCounts);
+        }
+        return response;
+    }
+
+    /**
+     * Sums the counts of the facet fields and of the facet queries of the cores. The date and range facets aren't
+     * merged.
+     * 
+     * @param responses the responses of the cores.
+     * @param params the parameters of the query.
+     * @return the merged facet counts, null if the query doesn't compute facets.
+     */
+    @SuppressWarnings("unchecked")
+    private NamedList<Object> mergeFacets(List<NamedList<Object>> responses, SolrParams params)
+    {
+        Map<String, Integer> queries = new LinkedHashMap<String, Integer>();
+        Map<String, Map<String, Integer>> fields = new LinkedHashMap<String, Map<String, Integer>>();
+        boolean hasFacets = false;
+        for (NamedList<Object> response : responses) {
+            NamedList<Object> coreFacetCounts = (NamedList<Object>) response.get(FACET_COUNTS);
+            if (coreFacetCounts == null) {
+                continue;
+            }
+            hasFacets = true;
+            NamedList<Number> coreQueries = (NamedList<Number>) coreFacetCounts.get(FACET_QUERIES);
+            if (coreQueries != null) {
+                addCounts(queries, coreQueries);
+            }
+            NamedList<NamedList<Number>> coreFields = (NamedList<NamedList<Number>>) coreFacetCounts.get(FACET_FIELDS);
+            if (coreFields != null) {
+                for (int i = 0; i < coreFields.size(); i++) {
+                    Map<String, Integer> counts = fields.get(coreFields.getName(i));
+                    if (counts == null) {
+                        counts = new LinkedHashMap<String, Integer>();
+                        fields.put(coreFields.getName(i), counts);
+                    }
+                    addCounts(counts, coreFields.getVal(i));
+                }
+            }
+        }
+        if (!hasFacets) {
+            return null;
+        }
+
+        NamedList<Object> mergedQueries = new NamedList<Object>();
+        for (Map.Entry<String, Integer> entry : queries.entrySet()) {
+            mergedQueries.add(entry.getKey(), entry.getValue());
+        }
+        NamedList<Object> mergedFields = new NamedList<Object>();
+        for (Map.Entry<String, Map<String, Integer>> entry : fields.entrySet()) {
+            mergedFields.add(entry.getKey(), getFacetWindow(entry.getKey(), entry.getValue(), params));
+        }
+        NamedList<Object> facetCounts = new NamedList<Object>();
+        facetCounts.add(FACET_QUERIES, mergedQueries);
+        facetCounts.add(FACET_FIELDS, mergedFields);
+        return facetCounts;
+    }
+
+    /**
+     * @param counts the summed counts, by facet value.
+     * @param coreCounts the counts of a core, by facet value.
+     */
+    private void addCounts(Map<String, Integer> counts, NamedList<Number> coreCounts)
+    {
+        for (int i = 0; i < coreCounts.size(); i++) {
+            Integer count = counts.get(coreCounts.getName(i));
+            int coreCount = coreCounts.getVal(i).intValue();
+            counts.put(coreCounts.getName(i), count == null ? coreCount : count + coreCount);
+        }
+    }
+
+    /**
+     * @param field a facet field.
+     * @param counts the summed counts of the values of the field.
+     * @param params the parameters of the query.
+     * @return the values of the requested window, sorted as the cores sort them.
+     */
+    private NamedList<Integer> getFacetWindow(String field, Map<String, Integer> counts, SolrParams params)
+    {
+        int limit = params.getFieldInt(field, FacetParams.FACET_LIMIT, DEFAULT_FACET_LIMIT);
+        int offset = params.getFieldInt(field, FacetParams.FACET_OFFSET, 0);
+        String sort = params.getFieldParam(field, FacetParams.FACET_SORT,
+            limit > 0 ? FacetParams.FACET_SORT_COUNT : FacetParams.FACET_SORT_INDEX);
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+        final boolean byCount = FacetParams.FACET_SORT_COUNT.equals(sort)
+            || FacetParams.FACET_SORT_COUNT_LEGACY.equals(sort);
+        Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>()
+        {
+            @Override
+            public int compare(Map.Entry<String, Integer> entry, Map.Entry<String, Integer> other)
+            {
+                int result = byCount ? other.getValue().compareTo(entry.getValue()) : 0;
+                return result != 0 ? result : entry.getKey().compareTo(other.getKey());
+            }
+        });
+
+        NamedList<Integer> window = new NamedList<Integer>();
+        int end = limit < 0 ? entries.size() : Math.min(offset + limit, entries.size());
+        for (int i = offset; i < end; i++) {
+            window.add(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        return window;
+    }
+
+    /**
+     * Merges the groups of documents of a grouped query, the paging parameters applying to the groups. The groups of
+     * different cores never share a value since they hold the documents of different wikis.
+     * 
+     * @param responses the responses of the cores.
+     * @param start index of the first group to return.
+     * @param rows number of groups to return.
+     * @param comparator orders the documents.
+     * @return the requested window of the merged groups, by grouping field.
+     */
+    @SuppressWarnings("unchecked")
+    private NamedList<Object> mergeGroups(List<NamedList<Object>> responses, int start, int rows,
+        final Comparator<SolrDocument> comparator)
+    {
+        Map<String, NamedList<Object>> commands = new LinkedHashMap<String, NamedList<Object>>();
+        for (NamedList<Object> response : responses) {
+            NamedList<Object> grouped = (NamedList<Object>) response.get(GROUPED);
+            for (int i = 0; grouped != null && i < grouped.size(); i++) {
+                NamedList<Object> command = (NamedList<Object>) grouped.getVal(i);
+                NamedList<Object> merged = commands.get(grouped.getName(i));
+                if (merged == null) {
+                    merged = new NamedList<Object>();
+                    merged.add(GROUPS, new ArrayList<Object>());
+                    commands.put(grouped.getName(i), merged);
+                }
+                for (int j = 0; j < command.size(); j++) {
+                    if (GROUPS.equals(command.getName(j))) {
+                        ((List<Object>) merged.get(GROUPS)).addAll((List<Object>) command.getVal(j));
+                    } else if (command.getVal(j) instanceof Number) {
+                        // Counts of matching documents and of groups.
+                        int index = merged.indexOf(command.getName(j), 0);
+                        if (index < 0) {
+                            merged.add(command.getName(j), command.getVal(j));
+                        } else {
+                            merged.setVal(index, ((Number) merged.getVal(index)).intValue()
+                                + ((Number) command.getVal(j)).intValue());
+                        }
+                    }
+                }
+            }
+        }
+
+        NamedList<Object> grouped = new NamedList<Object>();
+        for (Map.Entry<String, NamedList<Object>> entry : commands.entrySet()) {
+            List<Object> groups = (List<Object>) entry.getValue().get(GROUPS);
+            // Groups are ordered by their best document.
+            Collections.sort(groups, new Comparator<Object>()
+            {
+                @Override
+                public int compare(Object group1, Object group2)
+                {
+                    SolrDocumentList documents1 = (SolrDocumentList) ((NamedList<Object>) group1).get(DOCLIST);
+                    SolrDocumentList documents2 = (SolrDocumentList) ((NamedList<Object>) group2).get(DOCLIST);
+                    if (documents1.isEmpty() || documents2.isEmpty()) {
+                        return documents1.isEmpty() ? (documents2.isEmpty() ? 0 : 1) : -1;
+                    }
+                    return comparator.compare(documents1.get(0), documents2.get(0));
+                }
+            });
+            List<Object> window = new ArrayList<Object>();
+            for (int i = start; i < Math.min(start + rows, groups.size()); i++) {
+                window.add(groups.get(i));
+            }
+            entry.getValue().setVal(entry.getValue().indexOf(GROUPS, 0), window);
+            grouped.add(entry.getKey(), entry.getValue());
+        }
+        return grouped;
+    }
+
+    /**
+     * @param sort the sort parameter of a query, null to sort by score.
+     * @return the sort clauses of the query, in order.
+     */
+    private List<SortClause> getSortClauses(String sort)
+    {
+        List<SortClause> clauses = new ArrayList<SortClause>();
+        if (sort != null) {
+            for (String clause : sort.split(",")) {
+                String[] parts = clause.trim().split("\\s+");
+                if (parts[0].length() > 0) {
+                    clauses.add(new SortClause(parts[0], parts.length < 2 || !"asc".equalsIgnoreCase(parts[1])));
+                }
+            }
+        }
+        if (clauses.isEmpty()) {
+            clauses.add(new SortClause(SCORE, true));
+        }
+        return clauses;
+    }
+
+    /**
+     * @param sortClauses the sort clauses of a query.
+     * @return a comparator ordering the documents as the cores do.
+     */
+    private Comparator<SolrDocument> getComparator(final List<SortClause> sortClauses)
+    {
+        return new Comparator<SolrDocument>()
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public int compare(SolrDocument document1, SolrDocument document2)
+            {
+                for (SortClause sortClause : sortClauses) {
+                    Object value1 = document1.getFirstValue(sortClause.field);
+                    Object value2 = document2.getFirstValue(sortClause.field);
+                    int result;
+                    if (value1 == null || value2 == null) {
+                        // Documents without value come last.
+                        result = value1 == null ? (value2 == null ? 0 : 1) : -1;
+                    } else {
+                        result = ((Comparable<Object>) value1).compareTo(value2);
+                        result = sortClause.descending ? -result : result;
+                    }
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.index.internal;
+
+import junit.framework.Assert;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+/**
+ * @version $Id$
+ */
+public class IndexBatchSizerTest
+{
+    private static class TestBatchSizer extends IndexBatchSizer
+    {
+        private boolean heapUnderPressure;
+
+        public TestBatchSizer(int size, int maxSize, boolean adaptive)
+        {
+            super(size, maxSize, 1024, adaptive);
+        }
+
+        @Override
+        protected boolean isHeapUnderPressure()
+        {
+            return this.heapUnderPressure;
+        }
+    }
+
+    @Test
+    public void testFixedSize()
+    {
+        IndexBatchSizer sizer = new TestBatchSizer(10, 100, false);
+        sizer.onBatchSent(10, 100);
+        sizer.onBatchSent(10, 10);
+        Assert.assertEquals(10, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testAdaptiveSize()
+    {
+        TestBatchSizer sizer = new TestBatchSizer(10, 30, true);
+        sizer.onBatchSent(10, 100);
+        Assert.assertEquals(20, sizer.getBatchSize());
+        sizer.onBatchSent(20, 100);
+        Assert.assertEquals(30, sizer.getBatchSize());
+        sizer.onBatchSent(30, 150);
+        Assert.assertEquals(30, sizer.getBatchSize());
+        sizer.onBatchSent(30, 600);
+        Assert.assertEquals(15, sizer.getBatchSize());
+        sizer.heapUnderPressure = true;
+        sizer.onBatchSent(15, 10);
+        Assert.assertEquals(7, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testEstimateSize()
+    {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("title", "abcd");
+        Assert.assertTrue(IndexBatchSizer.estimateSize(doc) >= 8);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.internal;
+
+import junit.framework.Assert;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.platform.search.SearchEngine;
+import org.xwiki.test.AbstractComponentTestCase;
+
+/**
+ * The tests using a Solr run against a Solr started with the bundled <code>solr/</code> home, e.g. from the example
+ * directory of the Solr distribution with <code>java -Dsolr.solr.home=/path/to/solr -jar start.jar</code>, whose URL
+ * is given with <code>-Dsearch.solr.remote.url=http://localhost:8983/solr</code>. They are skipped otherwise.
+ * 
+ * @version $Id$
+ */
+public class RemoteSolrjSearchEngineTest extends AbstractComponentTestCase
+{
+    private static final String URL_KEY = "search.solr.remote.url";
+
+    /**
+     * Nothing listens on the port 1, so the updates fail right away.
+     */
+    private static final String UNREACHABLE_URL = "http://localhost:1/solr";
+
+    private String url;
+
+    private SearchEngine searchEngine;
+
+    private SolrServer server;
+
+    @Before
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        final ConfigurationSource configuration = registerMockComponent(ConfigurationSource.class, "xwikiproperties");
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(configuration).getProperty(with(URL_KEY), with(any(String.class)));
+                will(new CustomAction("return the URL of the test")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return url;
+                    }
+                });
+                allowing(configuration).getProperty(with(any(String.class)), with(any(Object.class)));
+                will(new CustomAction("return the default value")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return invocation.getParameter(1);
+                    }
+                });
+            }
+        });
+    }
+
+    private void lookupSearchEngine(String url) throws Exception
+    {
+        this.url = url;
+        this.searchEngine = getComponentManager().getInstance(SearchEngine.class, RemoteSolrjSearchEngine.HINT);
+        this.server = (SolrServer) this.searchEngine.getSearchEngine();
+    }
+
+    private SolrInputDocument createDocument()
+    {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("id", "remotetest.space.page.en");
+        doc.addField("space", "RemoteTestSpace");
+        doc.addField("lang", "en");
+        return doc;
+    }
+
+    @Test
+    public void testUpdateAndQuery() throws Exception
+    {
+        Assume.assumeNotNull(System.getProperty(URL_KEY));
+        lookupSearchEngine(System.getProperty(URL_KEY));
+
+        this.server.add(createDocument());
+        this.server.commit();
+
+        Assert.assertEquals(1, this.server.query(new SolrQuery("id:remotetest.space.page.en")).getResults()
+            .getNumFound());
+        Assert.assertTrue(this.searchEngine.getIndexVersion() >= 0);
+
+        this.server.deleteById("remotetest.space.page.en");
+        this.server.commit();
+
+        Assert.assertEquals(0, this.server.query(new SolrQuery("id:remotetest.space.page.en")).getResults()
+            .getNumFound());
+    }
+
+    @Test
+    public void testFailedQueuedUpdatesFailTheCommit() throws Exception
+    {
+        lookupSearchEngine(UNREACHABLE_URL);
+
+        // Queued, the failure is only known once the update is sent.
+        this.server.add(createDocument());
+        try {
+            this.server.commit();
+            Assert.fail("The commit should report the failed update");
+        } catch (SolrServerException expected) {
+            Assert.assertTrue(expected.getMessage().startsWith("Queued updates failed to be sent"));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.internal;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the escaping of the filter values of {@link SolrjSearchRequest}.
+ * 
+ * @version $Id$
+ */
+public class SolrjSearchRequestFilterTest
+{
+    @Test
+    public void testPlainValuesAreEscaped()
+    {
+        Assert.assertEquals("Main", SolrjSearchRequest.escapeFilterValue("Main"));
+        Assert.assertEquals("My\\ Space", SolrjSearchRequest.escapeFilterValue("My Space"));
+        Assert.assertEquals("a\\:b\\(c\\)", SolrjSearchRequest.escapeFilterValue("a:b(c)"));
+        Assert.assertEquals("\\[a\\]", SolrjSearchRequest.escapeFilterValue("[a]"));
+    }
+
+    @Test
+    public void testRangesAreKept()
+    {
+        Assert.assertEquals("[* TO NOW]", SolrjSearchRequest.escapeFilterValue("[* TO NOW]"));
+        Assert.assertEquals("{2012-01-01T00:00:00Z TO *}",
+            SolrjSearchRequest.escapeFilterValue("{2012-01-01T00:00:00Z TO *}"));
+    }
+
+    @Test
+    public void testWildcardsAreKept()
+    {
+        Assert.assertEquals("Main*", SolrjSearchRequest.escapeFilterValue("Main*"));
+        Assert.assertEquals("te?t", SolrjSearchRequest.escapeFilterValue("te?t"));
+        Assert.assertEquals("*", SolrjSearchRequest.escapeFilterValue("*"));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.internal;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.FacetParams;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.platform.search.SearchRequest;
+
+/**
+ * Tests the search profiles of {@link SolrjSearchRequest}.
+ * 
+ * @version $Id$
+ */
+public class SolrjSearchRequestProfileTest
+{
+    private Mockery mockery = new Mockery();
+
+    private ConfigurationSource configuration;
+
+    private SolrjSearchRequest request;
+
+    private SolrQuery solrQuery;
+
+    @Before
+    public void setUp()
+    {
+        this.configuration = this.mockery.mock(ConfigurationSource.class);
+
+        this.request = new SolrjSearchRequest();
+        this.request.logger = NOPLogger.NOP_LOGGER;
+        ReflectionUtils.setFieldValue(this.request, "configuration", this.configuration);
+
+        this.solrQuery = new SolrQuery("*:*");
+    }
+
+    private void configure(final String key, final String value)
+    {
+        this.mockery.checking(new Expectations()
+        {
+            {
+                allowing(configuration).getProperty(with(key), with(any(String.class)));
+                will(returnValue(value));
+            }
+        });
+    }
+
+    private void configureDefaults()
+    {
+        this.mockery.checking(new Expectations()
+        {
+            {
+                allowing(configuration).getProperty(with(any(String.class)), with(any(Object.class)));
+                will(new CustomAction("return the default value")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return invocation.getParameter(1);
+                    }
+                });
+            }
+        });
+    }
+
+    @Test
+    public void testNoProfile()
+    {
+        configureDefaults();
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertEquals("/apisearch", this.solrQuery.getQueryType());
+    }
+
+    @Test
+    public void testConfiguredDefaultProfile()
+    {
+        configure("search.profiles.default", SearchRequest.QUICK_SEARCH_PROFILE);
+        configure("search.profiles.quicksearch.handler", "/quicksearch");
+        configure("search.profiles.quicksearch.params", "rows=5");
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertEquals("/quicksearch", this.solrQuery.getQueryType());
+        Assert.assertEquals("5", this.solrQuery.get(CommonParams.ROWS));
+    }
+
+    @Test
+    public void testEmptyDefaultProfile()
+    {
+        configure("search.profiles.default", "");
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertNull(this.solrQuery.getQueryType());
+    }
+
+    @Test
+    public void testAdminProfile()
+    {
+        configureDefaults();
+        this.request.setProfile(SearchRequest.ADMIN_PROFILE);
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertEquals("/select", this.solrQuery.getQueryType());
+    }
+
+    @Test
+    public void testBuiltInProfile()
+    {
+        configureDefaults();
+        this.request.setProfile(SearchRequest.ADVANCED_SEARCH_PROFILE);
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertEquals("/advancedsearch", this.solrQuery.getQueryType());
+        Assert.assertNull(this.solrQuery.get(CommonParams.ROWS));
+    }
+
+    @Test
+    public void testUnknownProfile()
+    {
+        configureDefaults();
+        this.request.setProfile("unknown");
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertNull(this.solrQuery.getQueryType());
+    }
+
+    @Test
+    public void testConfiguredProfile()
+    {
+        configure("search.profiles.custom.handler", "/custom");
+        configure("search.profiles.custom.params", "rows=5 & facet.field=space&facet.field=lang&invalid&=empty");
+        this.request.setProfile("custom");
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertEquals("/custom", this.solrQuery.getQueryType());
+        Assert.assertEquals("5", this.solrQuery.get(CommonParams.ROWS));
+        Assert.assertEquals(Arrays.asList("space", "lang"),
+            Arrays.asList(this.solrQuery.getParams(FacetParams.FACET_FIELD)));
+        Assert.assertNull(this.solrQuery.get("invalid"));
+        Assert.assertNull(this.solrQuery.get(""));
+    }
+
+    @Test
+    public void testConfiguredHandlerOfBuiltInProfile()
+    {
+        configure("search.profiles.quicksearch.handler", "/select");
+        configure("search.profiles.quicksearch.params", "");
+        this.request.setProfile(SearchRequest.QUICK_SEARCH_PROFILE);
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertEquals("/select", this.solrQuery.getQueryType());
+    }
+
+    @Test
+    public void testRequestParametersWin()
+    {
+        configure("search.profiles.custom.handler", "/custom");
+        configure("search.profiles.custom.params", "rows=5&hl=on");
+        this.request.setProfile("custom");
+        this.request.getSearchParametersMap().put(CommonParams.ROWS, "20");
+
+        this.request.applyProfile(this.solrQuery);
+
+        Assert.assertNull(this.solrQuery.get(CommonParams.ROWS));
+        Assert.assertEquals("on", this.solrQuery.get("hl"));
+    }
+}
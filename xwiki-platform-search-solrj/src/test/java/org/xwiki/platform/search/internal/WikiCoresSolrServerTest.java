@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.platform.search.internal;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @version $Id$
+ */
+public class WikiCoresSolrServerTest
+{
+    private CoreContainer coreContainer;
+
+    private ExecutorService executor;
+
+    private WikiCoresSolrServer server;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        URL url = this.getClass().getClassLoader().getResource("solrhome");
+        System.setProperty(SolrjSearchEngine.SOLR_HOME_KEY, url.getPath());
+        this.coreContainer = new CoreContainer.Initializer().initialize();
+        this.executor = Executors.newFixedThreadPool(2);
+
+        SolrCore defaultCore = this.coreContainer.getCore(this.coreContainer.getDefaultCoreName());
+        try {
+            this.server =
+                new WikiCoresSolrServer(this.coreContainer, "wikicorestest_", defaultCore.getCoreDescriptor()
+                    .getInstanceDir(), this.executor);
+        } finally {
+            defaultCore.close();
+        }
+
+        // Creates the cores of both wikis and removes the documents of a previous run.
+        this.server.add(createDocument("wikia", "A", "Page1", 3));
+        this.server.add(createDocument("wikib", "B", "Page2", 2));
+        this.server.deleteByQuery("*:*");
+        this.server.commit();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+        this.coreContainer.shutdown();
+    }
+
+    private SolrInputDocument createDocument(String wiki, String space, String page, int day)
+    {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", wiki + '.' + space + '.' + page);
+        document.addField("wiki", wiki);
+        document.addField("space", space);
+        document.addField("date", new Date(day * 24L * 3600 * 1000));
+        return document;
+    }
+
+    private List<String> getIds(SolrQuery query) throws Exception
+    {
+        List<String> ids = new ArrayList<String>();
+        for (SolrDocument document : this.server.query(query).getResults()) {
+            ids.add((String) document.getFieldValue("id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testMergeSortedByField() throws Exception
+    {
+        this.server.add(createDocument("wikia", "A", "Page1", 3));
+        this.server.add(createDocument("wikia", "A", "Page3", 1));
+        this.server.add(createDocument("wikib", "B", "Page2", 2));
+        this.server.add(createDocument("wikib", "B", "Page4", 4));
+        this.server.commit();
+
+        // The sort field isn't part of the requested fields.
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields("id");
+        query.set("sort", "date desc");
+        query.setStart(1);
+        query.setRows(2);
+
+        Assert.assertEquals(Arrays.asList("wikia.A.Page1", "wikib.B.Page2"), getIds(query));
+        Assert.assertEquals(4, this.server.query(query).getResults().getNumFound());
+    }
+
+    @Test
+    public void testMergeSortedBySeveralFields() throws Exception
+    {
+        this.server.add(createDocument("wikia", "Main", "Page1", 1));
+        this.server.add(createDocument("wikia", "Sandbox", "Page2", 4));
+        this.server.add(createDocument("wikib", "Main", "Page3", 2));
+        this.server.add(createDocument("wikib", "Sandbox", "Page4", 3));
+        this.server.commit();
+
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields("id");
+        query.set("sort", "space asc, date desc");
+
+        Assert.assertEquals(Arrays.asList("wikib.Main.Page3", "wikia.Main.Page1", "wikia.Sandbox.Page2",
+            "wikib.Sandbox.Page4"), getIds(query));
+    }
+}